@@ -4,7 +4,9 @@ public enum KhazanaErrorCodes {
 
     CONTAINER_NOT_PRESENT_IN_DESTINATION("COM-KZN-001", "Container not found."),
     ENCRYPTION_FAILURE("COM-KZN-002", "Packet Encryption Failed-Invalid Packet format"),
-    OBJECT_STORE_NOT_ACCESSIBLE("COM-KZN-003", "Object store not accessible");
+    OBJECT_STORE_NOT_ACCESSIBLE("COM-KZN-003", "Object store not accessible"),
+    TAG_OPERATION_FAILED("COM-KZN-004", "Tag operation failed for tags : "),
+    DECRYPTION_FAILURE("COM-KZN-005", "Packet Decryption Failed-Invalid Packet format");
 
 
     private final String errorCode;
@@ -0,0 +1,17 @@
+package io.mosip.commons.khazana.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheStatsDto {
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long size;
+    private long weight;
+}
@@ -0,0 +1,298 @@
+package io.mosip.commons.khazana.impl;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+import io.mosip.commons.khazana.dto.CacheStatsDto;
+import io.mosip.commons.khazana.dto.ObjectDto;
+import io.mosip.commons.khazana.spi.ObjectStoreAdapter;
+import io.mosip.commons.khazana.util.WeightedLruCache;
+import io.mosip.commons.khazana.util.WeightedLruCache.CacheEntry;
+
+/**
+ * Read-through cache for metadata, tags and existence checks of any adapter.
+ * Entries are invalidated by writes going through this instance and expire after the ttl, which bounds
+ * staleness for writes made by other instances. Values are loaded outside any lock and only cached when no
+ * write invalidated their key meanwhile, so a caller never reads back the value from before its own write.
+ */
+public class CachingObjectStoreAdapter implements ObjectStoreAdapter {
+
+    private static final String SEPARATOR = "/";
+    private static final String METADATA = "m:";
+    private static final String EXISTS = "e:";
+    private static final String TAGS = "t:";
+
+    /**
+     * Every cache key is a type of this length followed by the container key.
+     */
+    private static final int TYPE_LENGTH = 2;
+
+    private static final int GENERATION_STRIPES = 256;
+
+    private final ObjectStoreAdapter adapter;
+
+    private final WeightedLruCache<Object> cache;
+
+    /**
+     * Invalidation counters, striped by key. A load is cached only if the stripe of its key did not move.
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    /**
+     * @param adapter   adapter to delegate to
+     * @param maxWeight approximate maximum heap used by cached entries in bytes
+     * @param ttlMillis time to live of each entry
+     */
+    public CachingObjectStoreAdapter(ObjectStoreAdapter adapter, long maxWeight, long ttlMillis) {
+        this.adapter = adapter;
+        this.cache = new WeightedLruCache<>(maxWeight, ttlMillis, CachingObjectStoreAdapter::weigh);
+    }
+
+    public CacheStatsDto getStats() {
+        return cache.getStats();
+    }
+
+    @Override
+    public InputStream getObject(String account, String container, String source, String process, String objectName) {
+        return adapter.getObject(account, container, source, process, objectName);
+    }
+
+    @Override
+    public InputStream getObject(String account, String container, String source, String process, String objectName,
+                                 boolean useAccountAsBucketname) {
+        return adapter.getObject(account, container, source, process, objectName, useAccountAsBucketname);
+    }
+
+    @Override
+    public InputStream getObjectRange(String account, String container, String source, String process, String objectName,
+                                      long offset, long length) {
+        return adapter.getObjectRange(account, container, source, process, objectName, offset, length);
+    }
+
+    @Override
+    public InputStream getObjectSuffix(String account, String container, String source, String process, String objectName,
+                                       long length) {
+        return adapter.getObjectSuffix(account, container, source, process, objectName, length);
+    }
+
+    @Override
+    public boolean exists(String account, String container, String source, String process, String objectName) {
+        String key = EXISTS + objectKey(account, container, source, process, objectName);
+        CacheEntry<Object> entry = cache.get(key);
+        if (entry != null)
+            return (Boolean) entry.getValue();
+        long generation = generation(key);
+        boolean exists = adapter.exists(account, container, source, process, objectName);
+        putIfUnchanged(key, generation, exists);
+        return exists;
+    }
+
+    @Override
+    public boolean putObject(String account, String container, String source, String process, String objectName,
+                             InputStream data) {
+        try {
+            return adapter.putObject(account, container, source, process, objectName, data);
+        } finally {
+            invalidateObject(account, container, source, process, objectName);
+        }
+    }
+
+    @Override
+    public Map<String, Object> addObjectMetaData(String account, String container, String source, String process,
+                                                 String objectName, Map<String, Object> metadata) {
+        try {
+            return adapter.addObjectMetaData(account, container, source, process, objectName, metadata);
+        } finally {
+            invalidateObject(account, container, source, process, objectName);
+        }
+    }
+
+    @Override
+    public Map<String, Object> addObjectMetaData(String account, String container, String source, String process,
+                                                 String objectName, String key, String value) {
+        try {
+            return adapter.addObjectMetaData(account, container, source, process, objectName, key, value);
+        } finally {
+            invalidateObject(account, container, source, process, objectName);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getMetaData(String account, String container, String source, String process,
+                                           String objectName) {
+        String key = METADATA + objectKey(account, container, source, process, objectName);
+        CacheEntry<Object> entry = cache.get(key);
+        if (entry == null) {
+            long generation = generation(key);
+            Map<String, Object> metadata = adapter.getMetaData(account, container, source, process, objectName);
+            putIfUnchanged(key, generation, metadata == null ? null : new HashMap<>(metadata));
+            return metadata;
+        }
+        // callers may modify the returned map so never hand out the cached instance
+        return entry.getValue() == null ? null : new HashMap<>((Map<String, Object>) entry.getValue());
+    }
+
+    @Override
+    public Integer incMetadata(String account, String container, String source, String process, String objectName,
+                               String metaDataKey) {
+        try {
+            return adapter.incMetadata(account, container, source, process, objectName, metaDataKey);
+        } finally {
+            invalidateObject(account, container, source, process, objectName);
+        }
+    }
+
+    @Override
+    public Integer decMetadata(String account, String container, String source, String process, String objectName,
+                               String metaDataKey) {
+        try {
+            return adapter.decMetadata(account, container, source, process, objectName, metaDataKey);
+        } finally {
+            invalidateObject(account, container, source, process, objectName);
+        }
+    }
+
+    @Override
+    public boolean deleteObject(String account, String container, String source, String process, String objectName) {
+        try {
+            return adapter.deleteObject(account, container, source, process, objectName);
+        } finally {
+            invalidateObject(account, container, source, process, objectName);
+        }
+    }
+
+    @Override
+    public boolean deleteObject(String account, String container, String source, String process, String objectName,
+                                boolean useAccountAsBucketname) {
+        try {
+            return adapter.deleteObject(account, container, source, process, objectName, useAccountAsBucketname);
+        } finally {
+            invalidateObject(account, container, source, process, objectName);
+        }
+    }
+
+    @Override
+    public boolean removeContainer(String account, String container, String source, String process) {
+        try {
+            return adapter.removeContainer(account, container, source, process);
+        } finally {
+            invalidateContainer(account, container);
+        }
+    }
+
+    @Override
+    public boolean pack(String account, String container, String source, String process) {
+        try {
+            return adapter.pack(account, container, source, process);
+        } finally {
+            invalidateContainer(account, container);
+        }
+    }
+
+    @Override
+    public List<ObjectDto> getAllObjects(String account, String container) {
+        return adapter.getAllObjects(account, container);
+    }
+
+    @Override
+    public Stream<ObjectDto> streamAllObjects(String account, String container) {
+        return adapter.streamAllObjects(account, container);
+    }
+
+    @Override
+    public Map<String, String> addTags(String account, String container, Map<String, String> tags) {
+        try {
+            return adapter.addTags(account, container, tags);
+        } finally {
+            invalidate(TAGS + containerKey(account, container));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getTags(String account, String container) {
+        String key = TAGS + containerKey(account, container);
+        CacheEntry<Object> entry = cache.get(key);
+        if (entry == null) {
+            long generation = generation(key);
+            Map<String, String> tags = adapter.getTags(account, container);
+            putIfUnchanged(key, generation, tags == null ? null : new HashMap<>(tags));
+            return tags;
+        }
+        return entry.getValue() == null ? null : new HashMap<>((Map<String, String>) entry.getValue());
+    }
+
+    private long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * Caches the loaded value unless the key was invalidated since the generation was read. The check and the
+     * put hold the cache lock, which invalidation also takes, so an invalidation cannot slip in between.
+     */
+    private void putIfUnchanged(String key, long generation, Object value) {
+        synchronized (cache) {
+            if (generations.get(stripe(key)) == generation)
+                cache.put(key, value);
+        }
+    }
+
+    private void invalidate(String key) {
+        synchronized (cache) {
+            generations.incrementAndGet(stripe(key));
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Also invalidates the reads without an object name, as those cover every object of the source and process.
+     */
+    private void invalidateObject(String account, String container, String source, String process, String objectName) {
+        String key = objectKey(account, container, source, process, objectName);
+        invalidate(METADATA + key);
+        invalidate(EXISTS + key);
+        if (objectName != null) {
+            String processKey = objectKey(account, container, source, process, null);
+            invalidate(METADATA + processKey);
+            invalidate(EXISTS + processKey);
+        }
+    }
+
+    private void invalidateContainer(String account, String container) {
+        String prefix = containerKey(account, container);
+        synchronized (cache) {
+            for (int i = 0; i < GENERATION_STRIPES; i++)
+                generations.incrementAndGet(i);
+            cache.invalidateIf(key -> key.startsWith(prefix, TYPE_LENGTH));
+        }
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private static String containerKey(String account, String container) {
+        return account + SEPARATOR + container + SEPARATOR;
+    }
+
+    private static String objectKey(String account, String container, String source, String process, String objectName) {
+        return containerKey(account, container) + source + SEPARATOR + process + SEPARATOR + objectName;
+    }
+
+    /**
+     * Rough heap size of a cached value in bytes.
+     */
+    private static long weigh(Object value) {
+        long weight = 16;
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                weight += 48 + String.valueOf(entry.getKey()).length() * 2L + String.valueOf(entry.getValue()).length() * 2L;
+        }
+        return weight;
+    }
+}
@@ -2,25 +2,49 @@ package io.mosip.commons.khazana.impl;
 
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PreDestroy;
 
 import io.mosip.commons.khazana.dto.ObjectDto;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -36,9 +60,24 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.mosip.commons.khazana.constant.KhazanaErrorCodes;
 import io.mosip.commons.khazana.exception.FileNotFoundInDestinationException;
 import io.mosip.commons.khazana.spi.ObjectStoreAdapter;
+import io.mosip.commons.khazana.util.BufferFileChannel;
+import io.mosip.commons.khazana.util.CompressionPolicy;
+import io.mosip.commons.khazana.util.CompressionPolicy.Compression;
+import io.mosip.commons.khazana.util.ContainerEntry;
+import io.mosip.commons.khazana.util.ContainerEntryChannel;
+import io.mosip.commons.khazana.util.ContainerIndex;
+import io.mosip.commons.khazana.util.ContainerIndexCache;
 import io.mosip.commons.khazana.util.EncryptionHelper;
+import io.mosip.commons.khazana.util.IoThrottle;
+import io.mosip.commons.khazana.util.MetadataCounterBatcher;
 import io.mosip.commons.khazana.util.ObjectStoreUtil;
-import io.mosip.kernel.core.util.FileUtils;
+import io.mosip.commons.khazana.util.SegmentedEnvelope;
+import io.mosip.commons.khazana.util.SegmentedEnvelope.SegmentTable;
+import io.mosip.commons.khazana.util.SegmentedFileChannel;
+import io.mosip.commons.khazana.util.StripedLocks;
+import io.mosip.commons.khazana.util.WeightedLruCache;
+import io.mosip.commons.khazana.util.WeightedLruCache.CacheEntry;
+import io.mosip.commons.khazana.util.ZipContainer;
 
 @Service
 @Qualifier("PosixAdapter")
@@ -49,6 +88,8 @@ public class PosixAdapter implements ObjectStoreAdapter {
     private static final String ZIP = ".zip";
     private static final String JSON = ".json";
 	private static final String TAGS = "_tags";
+    private static final String LOCK = ".lock";
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
     @Autowired
     private ObjectMapper objectMapper;
     @Value("${object.store.base.location:home}")
@@ -57,25 +98,123 @@ public class PosixAdapter implements ObjectStoreAdapter {
     @Autowired
     private EncryptionHelper helper;
 
-    public InputStream getObject(String account, String container, String source, String process, String objectName) {
-        try {
-            File accountLoc = new File(baseLocation + SEPARATOR + account);
-            if (!accountLoc.exists())
-                return null;
-            File containerZip = new File(accountLoc.getPath() + SEPARATOR + container + ZIP);
-            if (!containerZip.exists())
-                throw new FileNotFoundInDestinationException(KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorCode(),
-                        KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorMessage());
+    /**
+     * Window in which concurrent counter updates to the same key are merged. 0 disables batching.
+     */
+    @Value("${object.store.metadata.counter.batch.window.ms:0}")
+    private long counterBatchWindow;
+
+    /**
+     * Number of container indexes kept in memory. 0 disables the cache.
+     */
+    @Value("${object.store.posix.index.cache.size:1000}")
+    private int indexCacheSize;
+
+    /**
+     * Compression of container entries : stored, deflate, deflate:&lt;level&gt; or auto.
+     */
+    @Value("${object.store.posix.compression:deflate}")
+    private String compression;
+
+    /**
+     * Comma separated &lt;source&gt;[/&lt;process&gt;]=&lt;compression&gt; overrides of the compression.
+     */
+    @Value("${object.store.posix.compression.overrides:}")
+    private String compressionOverrides;
+
+    /**
+     * Share of a container taken by deleted and superseded entries above which it is compacted.
+     */
+    @Value("${object.store.posix.compaction.threshold:0.5}")
+    private double compactionThreshold;
+
+    /**
+     * Delay between background compaction runs. 0 disables background compaction.
+     */
+    @Value("${object.store.posix.compaction.interval.seconds:300}")
+    private long compactionInterval;
+
+    /**
+     * Maximum rate at which the compactor copies entries. 0 removes the limit.
+     */
+    @Value("${object.store.posix.compaction.bytes.per.second:10485760}")
+    private long compactionRate;
+
+    /**
+     * Serve stored entries of sealed container files from memory mapped regions in getObjectChannel. Packed
+     * containers are never mapped, as their plain text only exists in memory.
+     */
+    @Value("${object.store.posix.mmap.enabled:false}")
+    private boolean mmapEnabled;
 
-            InputStream ios = new FileInputStream(containerZip);
-            Map<ZipEntry, ByteArrayOutputStream> entries = getAllExistingEntries(ios);
+    /**
+     * Plain size of the segments pack encrypts a container in. 0 encrypts the container in one piece in the
+     * legacy layout, which needs the whole container in memory.
+     */
+    @Value("${object.store.posix.pack.segment.size:4194304}")
+    private int packSegmentSize;
 
-            Optional<ZipEntry> zipEntry = entries.keySet().stream().filter(e ->
-                    e.getName().contains(ObjectStoreUtil.getName(source, process, objectName) + ZIP)).findAny();
+    /**
+     * Number of segments encrypted in parallel while packing.
+     */
+    @Value("${object.store.posix.pack.threads:4}")
+    private int packThreads;
 
-            if (zipEntry.isPresent() && zipEntry.get() != null)
-                return new ByteArrayInputStream(entries.get(zipEntry.get()).toByteArray());
+    /**
+     * Time the decrypted segments and the index of a packed container are kept in memory for further reads.
+     * 0 disables the caches.
+     */
+    @Value("${object.store.posix.unpack.cache.ttl.seconds:60}")
+    private long unpackCacheTtl;
 
+    /**
+     * Total size of the decrypted segments kept in memory, and separately of the segment tables and the
+     * containers of the legacy layout.
+     */
+    @Value("${object.store.posix.unpack.cache.max.bytes:268435456}")
+    private long unpackCacheMaxBytes;
+
+    private final StripedLocks containerLocks = new StripedLocks(64);
+
+    /**
+     * Containers with deleted or superseded entries, checked by the next compaction run.
+     */
+    private final Map<String, String[]> compactionCandidates = new ConcurrentHashMap<>();
+
+    private MetadataCounterBatcher counterBatcher = null;
+
+    private ContainerIndexCache indexCache = null;
+
+    private CompressionPolicy compressionPolicy = null;
+
+    private ScheduledExecutorService compactionExecutor = null;
+
+    private IoThrottle compactionThrottle = null;
+
+    private ExecutorService packExecutor = null;
+
+    private WeightedLruCache<UnpackedContainer> unpackCache = null;
+
+    private WeightedLruCache<ByteBuffer> segmentCache = null;
+
+    public InputStream getObject(String account, String container, String source, String process, String objectName) {
+        return getEntryRange(account, container, ObjectStoreUtil.getName(source, process, objectName) + ZIP, 0, -1, false);
+    }
+
+    public InputStream getObjectRange(String account, String container, String source, String process, String objectName,
+                                      long offset, long length) {
+        return getEntryRange(account, container, ObjectStoreUtil.getName(source, process, objectName) + ZIP, offset, length, false);
+    }
+
+    public InputStream getObjectSuffix(String account, String container, String source, String process, String objectName,
+                                       long length) {
+        return getEntryRange(account, container, ObjectStoreUtil.getName(source, process, objectName) + ZIP, 0, length, true);
+    }
+
+    private InputStream getEntryRange(String account, String container, String entryName, long offset, long length,
+                                      boolean suffix) {
+        try {
+            return openEntry(account, container, entryName, offset, length, suffix);
         } catch (FileNotFoundInDestinationException e) {
             LOGGER.error("exception occured to get object for id - " + container, e);
         } catch (IOException e) {
@@ -84,8 +223,253 @@ public class PosixAdapter implements ObjectStoreAdapter {
         return null;
     }
 
+    /**
+     * Opens a single entry through the container index and positions the stream at the requested range.
+     * Only the requested entry is read, stored entries are skipped by seeking and deflated entries are inflated
+     * only up to the range. The container file stays open until the returned stream is closed.
+     *
+     * @param length bytes to read, negative to read to the end of the entry
+     * @return the entry stream, or null when the account or the entry does not exist
+     */
+    private InputStream openEntry(String account, String container, String entryName, long offset, long length,
+                                  boolean suffix) throws IOException {
+        File accountLoc = new File(baseLocation + SEPARATOR + account);
+        if (!accountLoc.exists())
+            return null;
+        File containerZip = new File(accountLoc.getPath() + SEPARATOR + container + ZIP);
+        if (!containerZip.exists())
+            throw new FileNotFoundInDestinationException(KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorCode(),
+                    KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorMessage());
+
+        OpenContainer open = openContainer(containerZip, container);
+        FileChannel channel = open.channel;
+        try {
+            ContainerEntry entry = open.index.get(entryName);
+            if (entry == null) {
+                channel.close();
+                return null;
+            }
+            if (suffix) {
+                offset = Math.max(0, entry.getSize() - length);
+                length = entry.getSize() - offset;
+            }
+            InputStream entryStream = ZipContainer.openEntry(channel, entry);
+            IOUtils.skipFully(entryStream, offset);
+            InputStream rangeStream = length < 0 ? entryStream : new BoundedInputStream(entryStream, length);
+            return new FilterInputStream(rangeStream) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        channel.close();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the object as a channel. Stored entries are read from a region of the container file, so
+     * {@link ContainerEntryChannel#transferTo} to a socket or file copies without passing through the heap.
+     * With object.store.posix.mmap.enabled, stored entries of sealed container files, as written by compaction,
+     * are memory mapped instead. Entries of packed containers are read from the decrypted segments and compressed
+     * entries are inflated, so neither is zero copy.
+     *
+     * @return the channel, or null when the object does not exist
+     */
+    public ContainerEntryChannel getObjectChannel(String account, String container, String source, String process,
+                                                  String objectName) {
+        File containerZip = new File(baseLocation + SEPARATOR + account + SEPARATOR + container + ZIP);
+        if (!containerZip.exists())
+            return null;
+        String entryName = ObjectStoreUtil.getName(source, process, objectName) + ZIP;
+        FileChannel channel = null;
+        try {
+            OpenContainer open = openContainer(containerZip, container);
+            channel = open.channel;
+            ContainerIndex index = open.index;
+            ContainerEntry entry = index.get(entryName);
+            if (entry == null) {
+                channel.close();
+                return null;
+            }
+            if (entry.getMethod() != ZipEntry.STORED) {
+                final FileChannel openChannel = channel;
+                InputStream entryStream = new FilterInputStream(ZipContainer.openEntry(channel, entry)) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            openChannel.close();
+                        }
+                    }
+                };
+                return ContainerEntryChannel.ofStream(entryStream, entry.getSize());
+            }
+            long dataOffset = ZipContainer.resolveDataOffset(channel, entry);
+            // sealed containers are only ever truncated after their data, so the mapped region stays valid
+            if (mmapEnabled && !open.isUnpacked() && index.isSealed() && entry.getSize() <= Integer.MAX_VALUE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, entry.getSize());
+                channel.close();
+                return ContainerEntryChannel.ofMapped(buffer);
+            }
+            return ContainerEntryChannel.ofRegion(channel, dataOffset, entry.getSize());
+        } catch (IOException e) {
+            LOGGER.error("exception occured to get object channel for id - " + container, e);
+            IOUtils.closeQuietly(channel);
+            return null;
+        }
+    }
+
     public boolean exists(String account, String container, String source, String process, String objectName) {
-        return getObject(account, container, source, process, objectName) != null;
+        try {
+            File containerZip = new File(baseLocation + SEPARATOR + account + SEPARATOR + container + ZIP);
+            if (!containerZip.exists())
+                return false;
+            String entryName = ObjectStoreUtil.getName(source, process, objectName) + ZIP;
+            ContainerIndex index = getIndexCache().get(containerZip.getPath(), containerZip.lastModified(), containerZip.length());
+            if (index != null)
+                return index.get(entryName) != null;
+            try (OpenContainer open = openContainer(containerZip, container)) {
+                return open.index.get(entryName) != null;
+            }
+        } catch (IOException e) {
+            LOGGER.error("exception occured to check object for id - " + container, e);
+            return false;
+        }
+    }
+
+    /**
+     * Index of the open container. The cached index is used while the container is unchanged, otherwise the
+     * index is read from the channel and cached.
+     */
+    private ContainerIndex getContainerIndex(File containerZip, FileChannel channel) throws IOException {
+        // the index is read after the stat so a concurrent change can only make the cached key stale, never the index
+        long lastModified = containerZip.lastModified();
+        long size = channel.size();
+        ContainerIndex index = getIndexCache().get(containerZip.getPath(), lastModified, size);
+        if (index == null) {
+            index = ZipContainer.readIndex(channel);
+            getIndexCache().put(containerZip.getPath(), lastModified, size, index);
+        }
+        return index;
+    }
+
+    /**
+     * Opens the container for reading. A packed container is read through a channel that decrypts only the
+     * segments covering each read, so callers read packed and unpacked containers alike.
+     */
+    private OpenContainer openContainer(File containerZip, String container) throws IOException {
+        FileChannel channel = FileChannel.open(containerZip.toPath(), StandardOpenOption.READ);
+        try {
+            if (ZipContainer.isContainer(channel))
+                return new OpenContainer(channel, getContainerIndex(containerZip, channel), false);
+            String key = containerZip.getPath() + SEPARATOR + containerZip.lastModified() + SEPARATOR + channel.size();
+            UnpackedContainer unpacked = unpack(key, containerZip, container, channel);
+            if (unpacked.segments == null) {
+                channel.close();
+                return new OpenContainer(new BufferFileChannel(unpacked.content), unpacked.index, true);
+            }
+            return new OpenContainer(new SegmentedFileChannel(channel,
+                    segmentReader(key, container, channel, unpacked.segments), unpacked.segments.getSegmentSize(),
+                    unpacked.size), unpacked.index, true);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the segment table and the index of the packed container, decrypting only the segments holding the
+     * central directory. The result is kept for object.store.posix.unpack.cache.ttl.seconds while the container
+     * is unchanged. A container of the legacy layout is a single envelope and is decrypted into memory as a whole.
+     */
+    private UnpackedContainer unpack(String key, File containerZip, String container, FileChannel channel)
+            throws IOException {
+        CacheEntry<UnpackedContainer> cached = getUnpackCache().get(key);
+        if (cached != null)
+            return cached.getValue();
+
+        UnpackedContainer unpacked;
+        SegmentTable segments = SegmentedEnvelope.readSegmentTable(channel);
+        if (segments == null) {
+            if (channel.size() > MAX_BUFFER_SIZE)
+                throw new IOException("Packed container too large to unpack : " + containerZip.getName());
+            ByteBuffer envelope = ByteBuffer.allocate((int) channel.size());
+            IOUtils.readFully(channel.position(0), envelope);
+            envelope.flip();
+            ByteBuffer content = helper.decrypt(container, envelope, null);
+            content.flip();
+            unpacked = new UnpackedContainer(null, content, content.remaining(),
+                    ZipContainer.readIndex(new BufferFileChannel(content)));
+        } else {
+            // the channel is not closed, it belongs to the caller
+            SegmentedFileChannel plain = segments.open(channel, segmentReader(key, container, channel, segments));
+            unpacked = new UnpackedContainer(segments, null, plain.size(), ZipContainer.readIndex(plain));
+        }
+        if (unpackCacheTtl > 0)
+            getUnpackCache().put(key, unpacked);
+        return unpacked;
+    }
+
+    /**
+     * Decrypts segments of the packed container on demand. Decrypted segments are kept in the segment cache, so
+     * reading the same region again does not decrypt it again.
+     */
+    private SegmentedFileChannel.SegmentReader segmentReader(String key, String container, FileChannel channel,
+                                                             SegmentTable segments) {
+        return index -> {
+            String segmentKey = key + SEPARATOR + index;
+            CacheEntry<ByteBuffer> cached = getSegmentCache().get(segmentKey);
+            if (cached != null)
+                return cached.getValue();
+            ByteBuffer plain = segments.decryptSegment(channel, index,
+                    (envelope, target) -> helper.decrypt(container, envelope, target));
+            if (unpackCacheTtl > 0)
+                getSegmentCache().put(segmentKey, plain);
+            return plain;
+        };
+    }
+
+    private synchronized WeightedLruCache<UnpackedContainer> getUnpackCache() {
+        if (unpackCache == null)
+            unpackCache = new WeightedLruCache<>(unpackCacheMaxBytes, TimeUnit.SECONDS.toMillis(unpackCacheTtl),
+                    UnpackedContainer::weight);
+        return unpackCache;
+    }
+
+    private synchronized WeightedLruCache<ByteBuffer> getSegmentCache() {
+        if (segmentCache == null)
+            segmentCache = new WeightedLruCache<>(unpackCacheMaxBytes, TimeUnit.SECONDS.toMillis(unpackCacheTtl),
+                    ByteBuffer::capacity);
+        return segmentCache;
+    }
+
+    /**
+     * Invalidates the unpack and segment caches for the container. Stale entries are otherwise only dropped when
+     * they expire or are evicted.
+     */
+    private void invalidateUnpacked(File containerZip) {
+        String prefix = containerZip.getPath() + SEPARATOR;
+        getUnpackCache().invalidateIf(key -> key.startsWith(prefix));
+        getSegmentCache().invalidateIf(key -> key.startsWith(prefix));
+    }
+
+    private synchronized CompressionPolicy getCompressionPolicy() {
+        if (compressionPolicy == null)
+            compressionPolicy = new CompressionPolicy(compression, compressionOverrides);
+        return compressionPolicy;
+    }
+
+    private synchronized ContainerIndexCache getIndexCache() {
+        if (indexCache == null)
+            indexCache = new ContainerIndexCache(indexCacheSize);
+        return indexCache;
     }
 
     public boolean putObject(String account, String container, String source, String process, String objectName, InputStream data) {
@@ -100,10 +484,8 @@ public class PosixAdapter implements ObjectStoreAdapter {
 
     public Map<String, Object> addObjectMetaData(String account, String container, String source, String process, String objectName, Map<String, Object> metadata) {
         try {
-            JSONObject jsonObject = objectMetadata(account, container, source, process, objectName, metadata);
-            createContainerZipWithSubpacket(account, container, source, process, objectName + JSON,
-                    new ByteArrayInputStream(jsonObject.toString().getBytes()));
-        } catch (io.mosip.kernel.core.exception.IOException | IOException e) {
+            mergeObjectMetadata(account, container, source, process, objectName, metadata);
+        } catch (IOException e) {
             LOGGER.error("exception occured to add metadata for id - " + container, e);
         }
         return metadata;
@@ -113,11 +495,8 @@ public class PosixAdapter implements ObjectStoreAdapter {
         try {
             Map<String, Object> metaMap = new HashMap<>();
             metaMap.put(key, value);
-            JSONObject jsonObject = objectMetadata(account, container, source, process, objectName, metaMap);
-            createContainerZipWithSubpacket(account, container, source, process, objectName + JSON, new ByteArrayInputStream(jsonObject.toString().getBytes()));
+            mergeObjectMetadata(account, container, source, process, objectName, metaMap);
             return metaMap;
-        } catch (io.mosip.kernel.core.exception.IOException e) {
-            LOGGER.error("exception occured to add metadata for id - " + container, e);
         } catch (IOException e) {
             LOGGER.error("exception occured to add metadata for id - " + container, e);
         }
@@ -126,22 +505,10 @@ public class PosixAdapter implements ObjectStoreAdapter {
 
     public Map<String, Object> getMetaData(String account, String container, String source, String process, String objectName) {
         Map<String, Object> metaMap = null;
-        try {
-            File accountLoc = new File(baseLocation + SEPARATOR + account);
-            if (!accountLoc.exists())
-                return null;
-            File containerZip = new File(accountLoc.getPath() + SEPARATOR + container + ZIP);
-            if (!containerZip.exists())
-                throw new FileNotFoundInDestinationException(KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorCode(),
-                        KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorMessage());
-
-            InputStream ios = new FileInputStream(containerZip);
-            Map<ZipEntry, ByteArrayOutputStream> entries = getAllExistingEntries(ios);
-
-            Optional<ZipEntry> zipEntry = entries.keySet().stream().filter(e -> e.getName().contains(objectName + JSON)).findAny();
-
-            if (zipEntry.isPresent() && zipEntry.get() != null) {
-                String string = entries.get(zipEntry.get()).toString();
+        try (InputStream metadataStream = openEntry(account, container,
+                ObjectStoreUtil.getName(source, process, objectName) + JSON, 0, -1, false)) {
+            if (metadataStream != null) {
+                String string = new String(IOUtils.toByteArray(metadataStream));
                 JSONObject jsonObject = objectMapper.readValue(objectMapper.writeValueAsString(string), JSONObject.class);
                 metaMap = objectMapper.readValue(jsonObject.toString(), HashMap.class);
             }
@@ -154,78 +521,56 @@ public class PosixAdapter implements ObjectStoreAdapter {
         return metaMap;
     }
 
-    private void createContainerZipWithSubpacket(String account, String container, String source, String process, String objectName, InputStream data) throws io.mosip.kernel.core.exception.IOException, IOException {
-        File accountLocation = new File(baseLocation + SEPARATOR + account);
-        if (!accountLocation.exists())
-            accountLocation.mkdir();
-        File containerZip = new File(accountLocation.getPath() + SEPARATOR + container + ZIP);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        if (!containerZip.exists()) {
-            try (ZipOutputStream packetZip = new ZipOutputStream(new BufferedOutputStream(out))) {
-                addEntryToZip(String.format(objectName),
-                        IOUtils.toByteArray(data), packetZip, source, process);
+    /**
+     * Appends the entry to the container under the container lock. Existing entries are left in place, an
+     * entry written again under the same name replaces the earlier one for readers.
+     */
+    private void createContainerZipWithSubpacket(String account, String container, String source, String process, String objectName, InputStream data) throws IOException {
+        if (data == null)
+            return;
+        withContainerLock(account, container, () -> {
+            File containerZip = new File(baseLocation + SEPARATOR + account + SEPARATOR + container + ZIP);
+            try (FileChannel channel = FileChannel.open(containerZip.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ContainerIndex index = getContainerIndex(containerZip, channel).copy();
+                String entryName = ObjectStoreUtil.getName(source, process, objectName);
+                PushbackInputStream entryData = Compression.sampleable(data);
+                Compression entryCompression = getCompressionPolicy().get(entryName).resolve(entryData);
+                boolean replaced = index.get(entryName) != null;
+                ZipContainer.appendEntry(channel, index, entryName, entryData, entryCompression.getMethod(),
+                        entryCompression.getLevel());
+                getIndexCache().put(containerZip.getPath(), containerZip.lastModified(), channel.size(), index);
+                if (replaced)
+                    markForCompaction(account, container);
             }
-        } else {
-            InputStream ios = new FileInputStream(containerZip);
-            Map<ZipEntry, ByteArrayOutputStream> entries = getAllExistingEntries(ios);
-            try (ZipOutputStream packetZip = new ZipOutputStream(out)) {
-                entries.entrySet().forEach(e -> {
-                    try {
-                        packetZip.putNextEntry(e.getKey());
-                        packetZip.write(e.getValue().toByteArray());
-                    } catch (IOException e1) {
-                        LOGGER.error("exception occured. Will create a new connection.", e1);
-                    }
-                });
-                addEntryToZip(String.format(objectName),
-                        IOUtils.toByteArray(data), packetZip, source, process);
-            }
-        }
-
-        FileUtils.copyToFile(new ByteArrayInputStream(out.toByteArray()), containerZip);
+            return null;
+        });
     }
 
-    private void addEntryToZip(String fileName, byte[] data, ZipOutputStream zipOutputStream, String source, String process) {
-        try {
-            if (data != null) {
-                ZipEntry zipEntry = new ZipEntry(ObjectStoreUtil.getName(source, process, fileName));
-                zipOutputStream.putNextEntry(zipEntry);
-                zipOutputStream.write(data);
-            }
-        } catch (IOException e) {
-            LOGGER.error("exception occured. Will create a new connection.", e);
-        }
-    }
-
-    private Map<ZipEntry, ByteArrayOutputStream> getAllExistingEntries(InputStream packetStream) throws IOException {
-        Map<ZipEntry, ByteArrayOutputStream> entries = new HashMap<>();
-        try (ZipInputStream zis = new ZipInputStream(packetStream)) {
-            ZipEntry ze = zis.getNextEntry();
-            while (ze != null) {
-                int len;
-                byte[] buffer = new byte[2048];
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                while ((len = zis.read(buffer)) > 0) {
-                    out.write(buffer, 0, len);
-                }
-                entries.put(ze, out);
-                zis.closeEntry();
-                ze = zis.getNextEntry();
-                out.close();
-            }
-            zis.closeEntry();
-        } finally {
-            packetStream.close();
-        }
-        return entries;
+    /**
+     * Merges the metadata into the existing metadata of the object and appends the result. The read and the
+     * append run under one container lock, so concurrent updates of different keys are all kept.
+     */
+    private void mergeObjectMetadata(String account, String container, String source, String process,
+                                     String objectName, Map<String, Object> metadata) throws IOException {
+        withContainerLock(account, container, () -> {
+            JSONObject jsonObject = objectMetadata(account, container, source, process, objectName, metadata);
+            createContainerZipWithSubpacket(account, container, source, process, objectName + JSON,
+                    new ByteArrayInputStream(jsonObject.toString().getBytes()));
+            return null;
+        });
     }
 
     private JSONObject objectMetadata(String account, String container, String source, String process,
                                       String objectName, Map<String, Object> metadata) {
         JSONObject jsonObject = new JSONObject(metadata);
-        Map<String, Object> existingMetaData = getMetaData(account, container, source, process, objectName);
+        // the account location is created by the container lock, so a missing container is checked here
+        File containerZip = new File(baseLocation + SEPARATOR + account + SEPARATOR + container + ZIP);
+        Map<String, Object> existingMetaData = containerZip.exists()
+                ? getMetaData(account, container, source, process, objectName) : null;
+        // values being added take precedence over the existing ones
         if (!CollectionUtils.isEmpty(existingMetaData))
-            existingMetaData.entrySet().forEach(entry -> {
+            existingMetaData.entrySet().stream().filter(entry -> !metadata.containsKey(entry.getKey())).forEach(entry -> {
                 try {
                     jsonObject.put(entry.getKey(), entry.getValue());
                 } catch (JSONException e) {
@@ -237,21 +582,358 @@ public class PosixAdapter implements ObjectStoreAdapter {
 
     @Override
     public Integer incMetadata(String account, String container, String source, String process, String objectName, String metaDataKey) {
-        // TODO Auto-generated method stub
-        return 0;
+        return updateCounter(account, container, source, process, objectName, metaDataKey, 1);
     }
 
     @Override
     public Integer decMetadata(String account, String container, String source, String process, String objectName, String metaDataKey) {
-        // TODO Auto-generated method stub
-        return 0;
+        return updateCounter(account, container, source, process, objectName, metaDataKey, -1);
+    }
+
+    /**
+     * Adds delta to a numeric metadata value under the container lock. Concurrent deltas to the same key are
+     * merged into one write when object.store.metadata.counter.batch.window.ms is set.
+     *
+     * @return the new value, or null when the metadata key does not exist
+     */
+    public Integer updateCounter(String account, String container, String source, String process, String objectName,
+                                 String metaDataKey, int delta) {
+        if (counterBatchWindow > 0)
+            return getCounterBatcher().add(ObjectStoreUtil.getName(account + SEPARATOR + container, source, process,
+                    objectName) + SEPARATOR + metaDataKey, delta, combinedDelta ->
+                    applyCounterDelta(account, container, source, process, objectName, metaDataKey, combinedDelta));
+        return applyCounterDelta(account, container, source, process, objectName, metaDataKey, delta);
+    }
+
+    private Integer applyCounterDelta(String account, String container, String source, String process, String objectName,
+                                      String metaDataKey, int delta) {
+        try {
+            return withContainerLock(account, container, () -> {
+                Map<String, Object> metadata = getMetaData(account, container, source, process, objectName);
+                if (metadata == null || metadata.get(metaDataKey) == null)
+                    return null;
+                Integer value = Integer.valueOf(metadata.get(metaDataKey).toString()) + delta;
+                addObjectMetaData(account, container, source, process, objectName, metaDataKey, value.toString());
+                return value;
+            });
+        } catch (IOException e) {
+            LOGGER.error("exception occured to update metadata for id - " + container, e);
+            return null;
+        }
+    }
+
+    private synchronized MetadataCounterBatcher getCounterBatcher() {
+        if (counterBatcher == null)
+            counterBatcher = new MetadataCounterBatcher(counterBatchWindow);
+        return counterBatcher;
+    }
+
+    /**
+     * Runs the action holding the container lock. Threads of this instance are serialised by a striped lock,
+     * other processes by an advisory lock on the container lock file. The lock is reentrant for the owning thread.
+     * When no container is left once the action ran, e.g. after removeContainer, the lock file is deleted while
+     * still locked. A process that locked the deleted file meanwhile finds another file, or none, at the path and
+     * starts over. This needs a file system with file keys, lock files are kept otherwise.
+     */
+    private <T> T withContainerLock(String account, String container, ContainerAction<T> action) throws IOException {
+        ReentrantLock lock = containerLocks.get(account + SEPARATOR + container);
+        lock.lock();
+        try {
+            if (lock.getHoldCount() > 1)
+                return action.run();
+            File accountLocation = new File(baseLocation + SEPARATOR + account);
+            if (!accountLocation.exists())
+                accountLocation.mkdir();
+            File lockFile = new File(accountLocation.getPath() + SEPARATOR + container + LOCK);
+            File containerZip = new File(accountLocation.getPath() + SEPARATOR + container + ZIP);
+            while (true) {
+                Object openedKey = lockFileKey(lockFile);
+                try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                     FileLock fileLock = channel.lock()) {
+                    if (!lockFile.exists())
+                        continue;
+                    Object lockedKey = lockFileKey(lockFile);
+                    // the opened file was deleted and another one created at the path before it was locked
+                    if (lockedKey != null && !lockedKey.equals(openedKey))
+                        continue;
+                    try {
+                        return action.run();
+                    } finally {
+                        if (lockedKey != null && !containerZip.exists())
+                            Files.deleteIfExists(lockFile.toPath());
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the file key of the lock file, null when it does not exist or the file system has no file keys
+     */
+    private static Object lockFileKey(File lockFile) throws IOException {
+        try {
+            return fileKey(lockFile);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
     }
 
+    private interface ContainerAction<T> {
+        T run() throws IOException;
+    }
+
+    private interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Channel and index of a container opened for reading. The channel is over the decrypted content when the
+     * container is packed.
+     */
+    private static class OpenContainer implements Closeable {
+
+        private final FileChannel channel;
+        private final ContainerIndex index;
+        private final boolean unpacked;
+
+        OpenContainer(FileChannel channel, ContainerIndex index, boolean unpacked) {
+            this.channel = channel;
+            this.index = index;
+            this.unpacked = unpacked;
+        }
+
+        boolean isUnpacked() {
+            return unpacked;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Segment table, plain size and index of a packed container, or the whole decrypted content for the legacy
+     * layout.
+     */
+    private static class UnpackedContainer {
+
+        private final SegmentTable segments;
+        private final ByteBuffer content;
+        private final long size;
+        private final ContainerIndex index;
+
+        UnpackedContainer(SegmentTable segments, ByteBuffer content, long size, ContainerIndex index) {
+            this.segments = segments;
+            this.content = content;
+            this.size = size;
+            this.index = index;
+        }
+
+        long weight() {
+            // a position and a length per segment
+            return content != null ? content.limit() : segments.getSegmentCount() * 12L;
+        }
+    }
+
+    /**
+     * Appends tombstones for the object and its metadata. The space is reclaimed by compaction.
+     */
     @Override
     public boolean deleteObject(String account, String container, String source, String process, String objectName) {
+        File containerZip = new File(baseLocation + SEPARATOR + account + SEPARATOR + container + ZIP);
+        if (!containerZip.exists())
+            return true;
+        try {
+            return withContainerLock(account, container, () -> {
+                try (FileChannel channel = FileChannel.open(containerZip.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    ContainerIndex index = getContainerIndex(containerZip, channel).copy();
+                    boolean deleted = false;
+                    for (String entryName : new String[]{ObjectStoreUtil.getName(source, process, objectName) + ZIP,
+                            ObjectStoreUtil.getName(source, process, objectName) + JSON}) {
+                        if (index.get(entryName) != null) {
+                            ZipContainer.appendTombstone(channel, index, entryName);
+                            deleted = true;
+                        }
+                    }
+                    if (deleted) {
+                        getIndexCache().put(containerZip.getPath(), containerZip.lastModified(), channel.size(), index);
+                        markForCompaction(account, container);
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.error("exception occured to delete object for id - " + container, e);
+            return false;
+        }
+    }
+
+    /**
+     * Rewrites the container without deleted and superseded entries when they take more than the compaction
+     * threshold. The live entries of a snapshot of the index are copied, throttled, without the container lock,
+     * as writers only append after the snapshot. The lock is then taken just to copy what changed meanwhile and
+     * swap the files. The rewritten container is sealed, so it can be memory mapped until the next write.
+     * Compaction needs a file system with file keys to tell whether the container was replaced. A lock file left
+     * without its container is removed.
+     *
+     * @return true when the container was rewritten
+     */
+    public boolean compact(String account, String container) {
+        File containerZip = new File(baseLocation + SEPARATOR + account + SEPARATOR + container + ZIP);
+        if (!containerZip.exists()) {
+            removeStaleLockFile(account, container);
+            return false;
+        }
+        File temp = null;
+        try {
+            Object fileKey = fileKey(containerZip);
+            ContainerIndex snapshot;
+            ContainerIndex targetIndex = new ContainerIndex();
+            try (FileChannel channel = FileChannel.open(containerZip.toPath(), StandardOpenOption.READ)) {
+                if (!ZipContainer.isContainer(channel))
+                    return false;
+                snapshot = ZipContainer.readIndex(channel);
+                if (snapshot.getDataEnd() == 0 || snapshot.getDeadBytes() < compactionThreshold * snapshot.getDataEnd())
+                    return false;
+                temp = File.createTempFile(containerZip.getName(), ".tmp", containerZip.getParentFile());
+                try (FileChannel target = FileChannel.open(temp.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    for (ContainerEntry entry : snapshot.getEntries())
+                        ZipContainer.copyEntry(channel, entry, target, targetIndex, getCompactionThrottle());
+                }
+            }
+            File compacted = temp;
+            if (!withContainerLock(account, container,
+                    () -> finishCompaction(containerZip, fileKey, snapshot, compacted, targetIndex))) {
+                markForCompaction(account, container);
+                return false;
+            }
+            LOGGER.info("compacted container - " + container + ", reclaimed bytes - " + snapshot.getDeadBytes());
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("exception occured to compact container for id - " + container, e);
+            return false;
+        } finally {
+            if (temp != null)
+                temp.delete();
+        }
+    }
+
+    /**
+     * Brings the compacted copy up to date with the entries written and deleted since the snapshot and moves it
+     * over the container. Runs under the container lock.
+     *
+     * @return false when the container was replaced since the snapshot, e.g. by pack
+     */
+    private boolean finishCompaction(File containerZip, Object fileKey, ContainerIndex snapshot, File compacted,
+                                     ContainerIndex compactedIndex) throws IOException {
+        if (fileKey == null || !containerZip.exists() || !fileKey.equals(fileKey(containerZip)))
+            return false;
+        try (FileChannel channel = FileChannel.open(containerZip.toPath(), StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(compacted.toPath(), StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            ContainerIndex index = getContainerIndex(containerZip, channel);
+            for (ContainerEntry entry : snapshot.getEntries()) {
+                if (index.get(entry.getName()) == null)
+                    ZipContainer.appendTombstone(target, compactedIndex, entry.getName());
+            }
+            // entries at or after the end of the snapshot were appended during the copy
+            for (ContainerEntry entry : index.getEntries()) {
+                if (entry.getLocalHeaderOffset() >= snapshot.getDataEnd())
+                    ZipContainer.copyEntry(channel, entry, target, compactedIndex, null);
+            }
+            ZipContainer.seal(target, compactedIndex);
+            target.force(true);
+        }
+        try {
+            Files.move(compacted.toPath(), containerZip.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            getIndexCache().invalidate(containerZip.getPath());
+        }
         return true;
     }
 
+    /**
+     * Removes the lock file of a container that no longer exists, e.g. one left by a process that stopped while
+     * holding it. Taking the container lock removes it.
+     */
+    private void removeStaleLockFile(String account, String container) {
+        if (!new File(baseLocation + SEPARATOR + account + SEPARATOR + container + LOCK).exists())
+            return;
+        try {
+            withContainerLock(account, container, () -> null);
+        } catch (IOException e) {
+            LOGGER.error("exception occured to remove lock file for id - " + container, e);
+        }
+    }
+
+    private static Object fileKey(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    private void markForCompaction(String account, String container) {
+        if (compactionInterval <= 0)
+            return;
+        compactionCandidates.put(account + SEPARATOR + container, new String[]{account, container});
+        scheduleCompaction();
+    }
+
+    private synchronized void scheduleCompaction() {
+        if (compactionExecutor != null)
+            return;
+        compactionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "posix-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionExecutor.scheduleWithFixedDelay(this::runCompaction, compactionInterval, compactionInterval,
+                TimeUnit.SECONDS);
+    }
+
+    private void runCompaction() {
+        for (String key : compactionCandidates.keySet()) {
+            String[] candidate = compactionCandidates.remove(key);
+            try {
+                if (candidate != null)
+                    compact(candidate[0], candidate[1]);
+            } catch (RuntimeException e) {
+                // keep the scheduled task alive for the other containers
+                LOGGER.error("exception occured to compact container for id - " + key, e);
+            }
+        }
+    }
+
+    private synchronized IoThrottle getCompactionThrottle() {
+        if (compactionThrottle == null)
+            compactionThrottle = new IoThrottle(compactionRate);
+        return compactionThrottle;
+    }
+
+    private synchronized ExecutorService getPackExecutor() {
+        if (packExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            packExecutor = Executors.newFixedThreadPool(Math.max(1, packThreads), runnable -> {
+                Thread thread = new Thread(runnable, "posix-pack-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return packExecutor;
+    }
+
+    @PreDestroy
+    public synchronized void shutdownExecutors() {
+        if (compactionExecutor != null)
+            compactionExecutor.shutdownNow();
+        if (packExecutor != null)
+            packExecutor.shutdownNow();
+    }
+
     @Override
     public boolean removeContainer(String account, String container, String source, String process) {
         try {
@@ -262,8 +944,12 @@ public class PosixAdapter implements ObjectStoreAdapter {
             if (!containerZip.exists())
                 throw new FileNotFoundInDestinationException(KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorCode(),
                         KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorMessage());
-            containerZip.delete();
-            FileUtils.forceDelete(containerZip);
+            withContainerLock(account, container, () -> {
+                getIndexCache().invalidate(containerZip.getPath());
+                invalidateUnpacked(containerZip);
+                Files.delete(containerZip.toPath());
+                return null;
+            });
             return true;
         } catch (Exception e) {
             LOGGER.error("exception occured while packing.", e);
@@ -272,6 +958,12 @@ public class PosixAdapter implements ObjectStoreAdapter {
 
     }
 
+    /**
+     * Seals the container by writing its central directory and then encrypts it. When entries are not
+     * compressed as the compression policy asks, the container is rewritten with the policy applied first.
+     * The container is streamed through a {@link SegmentedEnvelope} into a temp file that replaces it, so packing
+     * needs constant memory whatever the container size.
+     */
     @Override
     public boolean pack(String account, String container, String source, String process) {
         try {
@@ -283,21 +975,97 @@ public class PosixAdapter implements ObjectStoreAdapter {
                 throw new FileNotFoundInDestinationException(KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorCode(),
                         KhazanaErrorCodes.CONTAINER_NOT_PRESENT_IN_DESTINATION.getErrorMessage());
 
-            InputStream ios = new FileInputStream(containerZip);
-            byte[] encryptedPacket = helper.encrypt(container, IOUtils.toByteArray(ios));
-            FileUtils.copyToFile(new ByteArrayInputStream(encryptedPacket), containerZip);
-            return encryptedPacket != null;
+            return withContainerLock(account, container, () -> {
+                File recompressed = null;
+                try (FileChannel channel = FileChannel.open(containerZip.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    ContainerIndex index = ZipContainer.readIndex(channel);
+                    Map<String, Compression> compressions = getPackCompressions(channel, index);
+                    if (!compressions.isEmpty())
+                        recompressed = recompress(containerZip, channel, index, compressions);
+                    else if (!index.isSealed())
+                        ZipContainer.seal(channel, index);
+                    try (InputStream packet = recompressed != null ? new FileInputStream(recompressed)
+                            : Channels.newInputStream(channel.position(0))) {
+                        encryptAtomically(containerZip, container, packet);
+                    }
+                    return true;
+                } finally {
+                    if (recompressed != null)
+                        Files.deleteIfExists(recompressed.toPath());
+                    getIndexCache().invalidate(containerZip.getPath());
+                }
+            });
         } catch (Exception e) {
             LOGGER.error("exception occured while packing.", e);
             return false;
         }
     }
 
+    private void encryptAtomically(File containerZip, String container, InputStream packet) throws IOException {
+        if (packSegmentSize <= 0) {
+            writeAtomically(containerZip, helper.encrypt(container, IOUtils.toByteArray(packet)));
+            return;
+        }
+        writeAtomically(containerZip, out -> SegmentedEnvelope.encrypt(packet, out, packSegmentSize,
+                (segment, aad, target) -> helper.encrypt(container, segment, aad, target), getPackExecutor(),
+                Math.max(1, packThreads) * 2));
+    }
+
+    /**
+     * Resolves the compression of every entry for packing.
+     *
+     * @return compression by entry name, or an empty map when all entries already match the policy
+     */
+    private Map<String, Compression> getPackCompressions(FileChannel channel, ContainerIndex index) throws IOException {
+        Map<String, Compression> compressions = new LinkedHashMap<>();
+        boolean changed = false;
+        for (ContainerEntry entry : index.getEntries()) {
+            Compression entryCompression = getCompressionPolicy().get(entry.getName());
+            if (entryCompression.isAuto()) {
+                try (PushbackInputStream sample = Compression.sampleable(ZipContainer.openEntry(channel, entry))) {
+                    entryCompression = entryCompression.resolve(sample);
+                }
+            }
+            compressions.put(entry.getName(), entryCompression);
+            changed |= entryCompression.getMethod() != entry.getMethod();
+        }
+        return changed ? compressions : new LinkedHashMap<>();
+    }
+
+    /**
+     * Copies the latest entries to a new sealed container with the given compressions.
+     *
+     * @return temp file holding the new container, to be deleted by the caller
+     */
+    private File recompress(File containerZip, FileChannel channel, ContainerIndex index,
+                            Map<String, Compression> compressions) throws IOException {
+        File temp = File.createTempFile(containerZip.getName(), ".tmp", containerZip.getParentFile());
+        try (FileChannel target = FileChannel.open(temp.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ContainerIndex targetIndex = new ContainerIndex();
+            for (ContainerEntry entry : index.getEntries()) {
+                Compression entryCompression = compressions.get(entry.getName());
+                try (InputStream entryData = ZipContainer.openEntry(channel, entry)) {
+                    ZipContainer.appendEntry(target, targetIndex, entry.getName(), entryData,
+                            entryCompression.getMethod(), entryCompression.getLevel(), entry.getDosTime());
+                }
+            }
+            ZipContainer.seal(target, targetIndex);
+            return temp;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+    }
+
 	@Override
 	public Map<String, String> addTags(String account, String container, Map<String, String> tags) {
 		try {
-		JSONObject jsonObject = containterTagging(account, container, tags);
-		createContainerWithTagging(account, container, new ByteArrayInputStream(jsonObject.toString().getBytes()));
+			withContainerLock(account, container, () -> {
+				JSONObject jsonObject = containterTagging(account, container, tags);
+				createContainerWithTagging(account, container, new ByteArrayInputStream(jsonObject.toString().getBytes()));
+				return null;
+			});
 		} catch (Exception e) {
 			LOGGER.error("exception occured to add tags for id - " + container, e);
 		}
@@ -354,14 +1122,75 @@ public class PosixAdapter implements ObjectStoreAdapter {
 		if (!accountLocation.exists())
 			accountLocation.mkdir();
 		File tagFile = new File(accountLocation.getPath() + SEPARATOR + container + TAGS + JSON);
-		OutputStream outStream = new FileOutputStream(tagFile);
-		outStream.write(IOUtils.toByteArray(data));
-		outStream.close();
-
+		writeAtomically(tagFile, IOUtils.toByteArray(data));
 	}
 
+    /**
+     * Replaces the file by writing a temp file next to it and moving it into place, so that readers see
+     * either the old or the new content and a crash never leaves a partially written file.
+     */
+    private void writeAtomically(File target, byte[] data) throws IOException {
+        writeAtomically(target, out -> out.write(data));
+    }
+
+    private void writeAtomically(File target, ContentWriter writer) throws IOException {
+        File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                BufferedOutputStream buffered = new BufferedOutputStream(out, 65536);
+                writer.write(buffered);
+                buffered.flush();
+                out.getFD().sync();
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
     public List<ObjectDto> getAllObjects(String account, String container) {
-        return null;
+        List<ObjectDto> objectDtos;
+        try (Stream<ObjectDto> objects = streamAllObjects(account, container)) {
+            objectDtos = objects.collect(Collectors.toList());
+        }
+        return objectDtos.isEmpty() ? null : objectDtos;
+    }
+
+    /**
+     * Lists the latest objects of the container from its index, without inflating any entry. Metadata entries
+     * are skipped.
+     */
+    @Override
+    public Stream<ObjectDto> streamAllObjects(String account, String container) {
+        File containerZip = new File(baseLocation + SEPARATOR + account + SEPARATOR + container + ZIP);
+        if (!containerZip.exists())
+            return Stream.empty();
+        try (OpenContainer open = openContainer(containerZip, container)) {
+            // cached indexes are never modified, so the entries can be streamed after the channel is closed
+            ContainerIndex index = open.index;
+            return index.getEntries().stream()
+                    .filter(entry -> entry.getName().endsWith(ZIP))
+                    .map(this::toObjectDto)
+                    .filter(Objects::nonNull);
+        } catch (IOException e) {
+            LOGGER.error("exception occured to list objects for id - " + container, e);
+            return Stream.empty();
+        }
+    }
+
+    private ObjectDto toObjectDto(ContainerEntry entry) {
+        String[] keys = entry.getName().substring(0, entry.getName().length() - ZIP.length()).split(SEPARATOR);
+        Date lastModified = new Date(ZipContainer.dosToJavaTime(entry.getDosTime()));
+        switch (keys.length) {
+            case 1:
+                return new ObjectDto(null, null, keys[0], lastModified);
+            case 2:
+                return new ObjectDto(keys[0], null, keys[1], lastModified);
+            case 3:
+                return new ObjectDto(keys[0], keys[1], keys[2], lastModified);
+            default:
+                return null;
+        }
     }
 
 	@Override
@@ -374,7 +1203,7 @@ public class PosixAdapter implements ObjectStoreAdapter {
 	@Override
 	public boolean deleteObject(String account, String container, String source, String process, String objectName,
 			boolean useAccountAsBucketname) {
-		// TODO Auto-generated method stub
-		return false;
+		// accounts are always directories in PosixAdapter
+		return deleteObject(account, container, source, process, objectName);
 	}
 }
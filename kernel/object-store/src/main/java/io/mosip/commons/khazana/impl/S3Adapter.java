@@ -8,13 +8,45 @@ import static io.mosip.commons.khazana.constant.KhazanaErrorCodes.OBJECT_STORE_N
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.PreDestroy;
 
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import org.apache.commons.io.IOUtils;
@@ -31,21 +63,32 @@ import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.GetObjectTaggingRequest;
 import com.amazonaws.services.s3.model.GetObjectTaggingResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.ObjectTagging;
-import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.model.SetObjectTaggingRequest;
 import com.amazonaws.services.s3.model.Tag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 
 import io.mosip.commons.khazana.config.LoggerConfiguration;
 import io.mosip.commons.khazana.dto.ObjectDto;
 import io.mosip.commons.khazana.exception.ObjectStoreAdapterException;
 import io.mosip.commons.khazana.spi.ObjectStoreAdapter;
+import io.mosip.commons.khazana.util.MetadataCounterBatcher;
 import io.mosip.commons.khazana.util.ObjectStoreUtil;
+import io.mosip.commons.khazana.util.StreamingObjectInputStream;
+import io.mosip.commons.khazana.util.StripedLocks;
 import io.mosip.kernel.core.exception.ExceptionUtils;
 import io.mosip.kernel.core.logger.spi.Logger;
 
@@ -65,8 +108,35 @@ public class S3Adapter implements ObjectStoreAdapter {
     @Value("${object.store.s3.region:null}")
     private String region;
 
-    @Value("${object.store.s3.readlimit:10000000}")
-    private int readlimit;
+    /**
+     * Streams larger than the threshold are uploaded as multipart uploads.
+     */
+    @Value("${object.store.s3.multipart.threshold:16777216}")
+    private int multipartThreshold;
+
+    /**
+     * Size of each multipart part. S3 needs at least 5 MB for every part except the last one.
+     */
+    @Value("${object.store.s3.multipart.partsize:8388608}")
+    private int multipartPartSize;
+
+    /**
+     * Objects larger than the threshold are downloaded as parallel ranged parts by downloadObject.
+     */
+    @Value("${object.store.s3.download.threshold:16777216}")
+    private long downloadThreshold;
+
+    @Value("${object.store.s3.download.partsize:8388608}")
+    private int downloadPartSize;
+
+    @Value("${object.store.s3.list.pagesize:1000}")
+    private int listPageSize;
+
+    @Value("${object.store.s3.transfer.threads:4}")
+    private int transferThreads;
+
+    @Value("${object.store.s3.multipart.part.retry:3}")
+    private int partRetry;
 
     @Value("${object.store.connection.max.retry:20}")
     private int maxRetry;
@@ -77,11 +147,48 @@ public class S3Adapter implements ObjectStoreAdapter {
     @Value("${object.store.s3.use.account.as.bucketname:false}")
     protected boolean useAccountAsBucketname;
 
+    /**
+     * When enabled getObject returns a stream backed by the live connection instead of
+     * buffering the whole object on heap. Callers must close the returned stream.
+     */
+    @Value("${object.store.s3.stream.enabled:false}")
+    private boolean streamEnabled;
+
     private static final String SEPARATOR = "/";
 
-    private int retry = 0;
-    
-    private AmazonS3 connection = null;
+    private static final int INITIAL_BUFFER_SIZE = 65536;
+
+    @Value("${object.store.s3.healthcheck.interval.seconds:60}")
+    private long healthCheckInterval;
+
+    @Value("${object.store.s3.bucket.cache.size:10000}")
+    private int bucketCacheSize;
+
+    @Value("${object.store.metadata.counter.max.retry:10}")
+    private int counterMaxRetry;
+
+    /**
+     * Window in which concurrent counter updates to the same key are merged. 0 disables batching.
+     */
+    @Value("${object.store.metadata.counter.batch.window.ms:0}")
+    private long counterBatchWindow;
+
+    private volatile AmazonS3 connection = null;
+
+    private final StripedLocks counterLocks = new StripedLocks(64);
+
+    private MetadataCounterBatcher counterBatcher = null;
+
+    private String healthCheckBucket = null;
+
+    private ScheduledExecutorService healthCheckExecutor = null;
+
+    /**
+     * Buckets known to exist. Buckets are never deleted by the adapters so entries stay valid.
+     */
+    private Map<String, Boolean> existingBuckets = null;
+
+    private ExecutorService transferExecutor = null;
 
 	@Override
 	public InputStream getObject(String account, String container, String source, String process, String objectName) {
@@ -90,10 +197,56 @@ public class S3Adapter implements ObjectStoreAdapter {
 	}
     
 	private InputStream getObject(String finalObjectName, String bucketName, String container) {
+		return getObject(new GetObjectRequest(bucketName, finalObjectName), container);
+	}
+
+	@Override
+	public InputStream getObjectRange(String account, String container, String source, String process,
+			String objectName, long offset, long length) {
+		GetObjectRequest getObjectRequest = new GetObjectRequest(getBucketName(account, container, useAccountAsBucketname),
+				getFinalObjectName(container, source, process, objectName, useAccountAsBucketname));
+		if (length < 0)
+			getObjectRequest.setRange(offset);
+		else if (length == 0)
+			return new ByteArrayInputStream(new byte[0]);
+		else
+			getObjectRequest.setRange(offset, offset + length - 1);
+		return getObject(getObjectRequest, container);
+	}
+
+	@Override
+	public InputStream getObjectSuffix(String account, String container, String source, String process,
+			String objectName, long length) {
+		String bucketName = getBucketName(account, container, useAccountAsBucketname);
+		String finalObjectName = getFinalObjectName(container, source, process, objectName, useAccountAsBucketname);
+		// suffix byte ranges are not supported by the sdk so resolve the start from the object length
+		long contentLength;
+		try {
+			contentLength = getConnection(bucketName).getObjectMetadata(bucketName, finalObjectName).getContentLength();
+		} catch (Exception e) {
+			LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured to getObjectSuffix for : " + container,
+					ExceptionUtils.getStackTrace(e));
+			throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+					OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+		}
+		if (length <= 0 || contentLength == 0)
+			return new ByteArrayInputStream(new byte[0]);
+		GetObjectRequest getObjectRequest = new GetObjectRequest(bucketName, finalObjectName);
+		getObjectRequest.setRange(Math.max(0, contentLength - length), contentLength - 1);
+		return getObject(getObjectRequest, container);
+	}
+
+	private InputStream getObject(GetObjectRequest getObjectRequest, String container) {
+		String bucketName = getObjectRequest.getBucketName();
 		S3Object s3Object = null;
 		try {
-			s3Object = getConnection(bucketName).getObject(bucketName, finalObjectName);
-			if (s3Object != null) {
+			s3Object = getConnection(bucketName).getObject(getObjectRequest);
+			if (s3Object != null && streamEnabled) {
+				// connection is released when the caller closes the stream
+				InputStream stream = new StreamingObjectInputStream(s3Object, getObjectRequest.getKey());
+				s3Object = null;
+				return stream;
+			} else if (s3Object != null) {
 				ByteArrayOutputStream temp = new ByteArrayOutputStream();
 				IOUtils.copy(s3Object.getObjectContent(), temp);
 				ByteArrayInputStream bis = new ByteArrayInputStream(temp.toByteArray());
@@ -117,6 +270,141 @@ public class S3Adapter implements ObjectStoreAdapter {
 		return null;
 	}
 
+    /**
+     * Downloads the object into the given stream. Large objects are fetched as concurrent ranged parts
+     * and written in order. At most two parts per transfer thread are held in memory.
+     *
+     * @return number of bytes written
+     */
+    public long downloadObject(String account, String container, String source, String process, String objectName,
+                               OutputStream out) {
+        String bucketName = getBucketName(account, container, useAccountAsBucketname);
+        String finalObjectName = getFinalObjectName(container, source, process, objectName, useAccountAsBucketname);
+        List<Future<byte[]>> parts = new ArrayList<>();
+        try {
+            AmazonS3 connection = getConnection(bucketName);
+            ObjectMetadata objectMetadata = connection.getObjectMetadata(bucketName, finalObjectName);
+            long contentLength = objectMetadata.getContentLength();
+            if (contentLength <= downloadThreshold) {
+                try (S3Object s3Object = connection.getObject(bucketName, finalObjectName)) {
+                    return IOUtils.copyLarge(s3Object.getObjectContent(), out);
+                }
+            }
+            int partCount = (int) ((contentLength + downloadPartSize - 1) / downloadPartSize);
+            int window = Math.max(1, transferThreads) * 2;
+            int submitted = 0;
+            for (; submitted < Math.min(window, partCount); submitted++)
+                parts.add(submitRangedPart(connection, bucketName, finalObjectName, objectMetadata.getETag(),
+                        submitted, contentLength));
+            for (int written = 0; written < partCount; written++) {
+                out.write(parts.get(written).get());
+                // release the written part before fetching the next one
+                parts.set(written, null);
+                if (submitted < partCount)
+                    parts.add(submitRangedPart(connection, bucketName, finalObjectName, objectMetadata.getETag(),
+                            submitted++, contentLength));
+            }
+            return contentLength;
+        } catch (Exception e) {
+            parts.stream().filter(part -> part != null).forEach(part -> part.cancel(true));
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured to downloadObject for : " + container,
+                    ExceptionUtils.getStackTrace(e));
+            throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+        }
+    }
+
+    /**
+     * Downloads the object into a temp file. Objects above the download threshold are fetched as concurrent
+     * parts written at their offset, so no reordering buffer is needed. The first failed part cancels the
+     * others. The caller owns the returned file and must delete it.
+     */
+    public File downloadObjectToFile(String account, String container, String source, String process, String objectName) {
+        String bucketName = getBucketName(account, container, useAccountAsBucketname);
+        String finalObjectName = getFinalObjectName(container, source, process, objectName, useAccountAsBucketname);
+        File tempFile = null;
+        List<Future<Void>> parts = new ArrayList<>();
+        try {
+            tempFile = File.createTempFile("s3-download-", ".tmp");
+            AmazonS3 connection = getConnection(bucketName);
+            ObjectMetadata objectMetadata = connection.getObjectMetadata(bucketName, finalObjectName);
+            long contentLength = objectMetadata.getContentLength();
+            if (contentLength <= downloadThreshold) {
+                try (S3Object s3Object = connection.getObject(bucketName, finalObjectName)) {
+                    Files.copy(s3Object.getObjectContent(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                return tempFile;
+            }
+            int partCount = (int) ((contentLength + downloadPartSize - 1) / downloadPartSize);
+            Semaphore inFlight = new Semaphore(Math.max(1, transferThreads) * 2);
+            CompletionService<Void> completion = new ExecutorCompletionService<>(getTransferExecutor());
+            int completed = 0;
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+                for (int partNumber = 0; partNumber < partCount; partNumber++) {
+                    inFlight.acquire();
+                    // surface a failed part before submitting more
+                    for (Future<Void> done = completion.poll(); done != null; done = completion.poll(), completed++)
+                        done.get();
+                    final long position = (long) partNumber * downloadPartSize;
+                    final int index = partNumber;
+                    parts.add(completion.submit(() -> {
+                        try {
+                            ByteBuffer buffer = ByteBuffer.wrap(getRangedPart(connection, bucketName, finalObjectName,
+                                    objectMetadata.getETag(), index, contentLength));
+                            long writePosition = position;
+                            while (buffer.hasRemaining())
+                                writePosition += channel.write(buffer, writePosition);
+                            return null;
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                }
+                for (; completed < parts.size(); completed++)
+                    completion.take().get();
+            }
+            return tempFile;
+        } catch (Exception e) {
+            parts.forEach(part -> part.cancel(true));
+            if (tempFile != null)
+                tempFile.delete();
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured to downloadObjectToFile for : " + container,
+                    ExceptionUtils.getStackTrace(e));
+            throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+        }
+    }
+
+    private Future<byte[]> submitRangedPart(AmazonS3 connection, String bucketName, String finalObjectName, String eTag,
+                                            int partNumber, long contentLength) {
+        return getTransferExecutor().submit(() ->
+                getRangedPart(connection, bucketName, finalObjectName, eTag, partNumber, contentLength));
+    }
+
+    /**
+     * Fetches one part. The etag constraint makes sure all parts come from the same version of the object.
+     */
+    private byte[] getRangedPart(AmazonS3 connection, String bucketName, String finalObjectName, String eTag,
+                                 int partNumber, long contentLength) throws IOException {
+        long start = (long) partNumber * downloadPartSize;
+        long end = Math.min(start + downloadPartSize, contentLength) - 1;
+        GetObjectRequest getObjectRequest = new GetObjectRequest(bucketName, finalObjectName).withRange(start, end);
+        if (eTag != null)
+            getObjectRequest.withMatchingETagConstraint(eTag);
+        S3Object s3Object = connection.getObject(getObjectRequest);
+        if (s3Object == null)
+            throw new IOException("Object " + finalObjectName + " changed while downloading part " + partNumber);
+        try (S3Object part = s3Object) {
+            byte[] buffer = new byte[(int) (end - start + 1)];
+            IOUtils.readFully(part.getObjectContent(), buffer);
+            return buffer;
+        }
+    }
+
     @Override
     public boolean exists(String account, String container, String source, String process, String objectName) {
     	 String finalObjectName=null;
@@ -152,54 +440,209 @@ public class S3Adapter implements ObjectStoreAdapter {
     		 bucketName=container;
     	}
         AmazonS3 connection = getConnection(bucketName);
-        if (!connection.doesBucketExistV2(bucketName))
-            connection.createBucket(bucketName);
+        createBucketIfNotExists(connection, bucketName);
 
-     
-        connection.putObject(bucketName, finalObjectName, data, null);
+
+        try {
+            // grow the buffer as data arrives, so small objects do not allocate the whole threshold
+            byte[] buffer = new byte[Math.min(multipartThreshold, INITIAL_BUFFER_SIZE)];
+            int length = 0;
+            while (true) {
+                if (length == buffer.length) {
+                    if (length >= multipartThreshold)
+                        break;
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(multipartThreshold, 2L * length));
+                }
+                int read = data.read(buffer, length, buffer.length - length);
+                if (read < 0)
+                    break;
+                length += read;
+            }
+            if (length < multipartThreshold) {
+                // whole stream fits below the threshold, send it in one request with a known length
+                ObjectMetadata objectMetadata = new ObjectMetadata();
+                objectMetadata.setContentLength(length);
+                connection.putObject(bucketName, finalObjectName,
+                        new ByteArrayInputStream(buffer, 0, length), objectMetadata);
+            } else
+                multipartUpload(connection, bucketName, finalObjectName, buffer, length, data);
+        } catch (IOException e) {
+            LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured to putObject for : " + container,
+                    ExceptionUtils.getStackTrace(e));
+            throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+        }
         return true;
     }
 
+    /**
+     * Splits the stream into parts and uploads them in parallel. At most two parts per transfer thread
+     * are held in memory at a time. The upload is aborted if any part fails after its retries.
+     *
+     * @param connection
+     * @param bucketName
+     * @param finalObjectName
+     * @param head            bytes already read from the stream
+     * @param headLength      number of bytes in head
+     * @param data            remaining stream
+     */
+    private void multipartUpload(AmazonS3 connection, String bucketName, String finalObjectName, byte[] head,
+                                 int headLength, InputStream data) throws IOException {
+        String uploadId = connection.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucketName, finalObjectName)).getUploadId();
+        Semaphore inFlight = new Semaphore(Math.max(1, transferThreads) * 2);
+        List<Future<PartETag>> parts = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            int offset = 0;
+            for (; headLength - offset >= multipartPartSize; offset += multipartPartSize)
+                parts.add(submitPart(connection, bucketName, finalObjectName, uploadId, partNumber++,
+                        head, offset, multipartPartSize, inFlight));
+            // the rest of the head starts the next part, so every part but the last one has the full size
+            byte[] buffer = new byte[multipartPartSize];
+            int length = headLength - offset;
+            System.arraycopy(head, offset, buffer, 0, length);
+            while (true) {
+                length += IOUtils.read(data, buffer, length, buffer.length - length);
+                if (length == 0 && !parts.isEmpty())
+                    break;
+                parts.add(submitPart(connection, bucketName, finalObjectName, uploadId, partNumber++,
+                        buffer, 0, length, inFlight));
+                if (length < buffer.length)
+                    break;
+                buffer = new byte[multipartPartSize];
+                length = 0;
+            }
+            List<PartETag> partETags = new ArrayList<>();
+            for (Future<PartETag> part : parts)
+                partETags.add(part.get());
+            connection.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(bucketName, finalObjectName, uploadId, partETags));
+        } catch (Exception e) {
+            parts.forEach(part -> part.cancel(true));
+            try {
+                connection.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, finalObjectName, uploadId));
+            } catch (Exception abortException) {
+                LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured while aborting multipart upload for : "
+                        + finalObjectName, ExceptionUtils.getStackTrace(abortException));
+            }
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+        }
+    }
+
+    private Future<PartETag> submitPart(AmazonS3 connection, String bucketName, String finalObjectName, String uploadId,
+                                        int partNumber, byte[] buffer, int offset, int length, Semaphore inFlight)
+            throws InterruptedException {
+        inFlight.acquire();
+        return getTransferExecutor().submit(() -> {
+            try {
+                for (int attempt = 0; ; attempt++) {
+                    try {
+                        UploadPartRequest uploadPartRequest = new UploadPartRequest().withBucketName(bucketName)
+                                .withKey(finalObjectName).withUploadId(uploadId).withPartNumber(partNumber)
+                                .withInputStream(new ByteArrayInputStream(buffer, offset, length)).withPartSize(length);
+                        return connection.uploadPart(uploadPartRequest).getPartETag();
+                    } catch (Exception e) {
+                        if (attempt >= partRetry)
+                            throw e;
+                        LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured to upload part " + partNumber
+                                + " of " + finalObjectName + ". Retry count : " + (attempt + 1), ExceptionUtils.getStackTrace(e));
+                    }
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    protected synchronized ExecutorService getTransferExecutor() {
+        if (transferExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            transferExecutor = Executors.newFixedThreadPool(Math.max(1, transferThreads), runnable -> {
+                Thread thread = new Thread(runnable, "s3-transfer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return transferExecutor;
+    }
+
+    @PreDestroy
+    public synchronized void shutdownExecutors() {
+        if (transferExecutor != null)
+            transferExecutor.shutdownNow();
+        if (healthCheckExecutor != null)
+            healthCheckExecutor.shutdownNow();
+    }
+
     @Override
     public Map<String, Object> addObjectMetaData(String account, String container, String source, String process,
                                                  String objectName, Map<String, Object> metadata) {
-        S3Object s3Object = null;
+        return addObjectMetaData(account, container, source, process, objectName, metadata, null);
+    }
+
+    /**
+     * Merges the metadata into the existing user metadata with a server side copy of the object onto itself,
+     * so the object body never leaves the object store.
+     *
+     * @param eTag when not null the update is applied only if the object still has this etag
+     * @return the metadata, or null when the etag precondition failed
+     */
+    public Map<String, Object> addObjectMetaData(String account, String container, String source, String process,
+                                                 String objectName, Map<String, Object> metadata, String eTag) {
         try {
-        	 String finalObjectName=null;
-        	 String bucketName=null;
-        	if(useAccountAsBucketname) {
-        		 finalObjectName = ObjectStoreUtil.getName(container,source, process, objectName);
-        		 bucketName=account;
-        	}else {
-        		 finalObjectName = ObjectStoreUtil.getName(source, process, objectName);
-        		 bucketName=container;
-        	}
-            ObjectMetadata objectMetadata = new ObjectMetadata();
-            //changed usermetadata getting  overrided
-            //metadata.entrySet().stream().forEach(m -> objectMetadata.addUserMetadata(m.getKey(), m.getValue() != null ? m.getValue().toString() : null));
-           
-            s3Object = getConnection(bucketName).getObject(bucketName, finalObjectName);
-            if (s3Object.getObjectMetadata() != null && s3Object.getObjectMetadata().getUserMetadata() != null)
-                s3Object.getObjectMetadata().getUserMetadata().entrySet().forEach(m -> objectMetadata.addUserMetadata(m.getKey(), m.getValue()));
-            metadata.entrySet().stream().forEach(m -> objectMetadata.addUserMetadata(m.getKey(), m.getValue() != null ? m.getValue().toString() : null));
-            PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, finalObjectName, s3Object.getObjectContent(), objectMetadata);
-            putObjectRequest.getRequestClientOptions().setReadLimit(readlimit);
-            getConnection(bucketName).putObject(putObjectRequest);
-            return metadata;
+            String bucketName = getBucketName(account, container, useAccountAsBucketname);
+            String finalObjectName = getFinalObjectName(container, source, process, objectName, useAccountAsBucketname);
+            AmazonS3 connection = getConnection(bucketName);
+            ObjectMetadata existingMetadata = connection.getObjectMetadata(bucketName, finalObjectName);
+            if (eTag != null && !eTag.equals(existingMetadata.getETag()))
+                return null;
+            return copyWithMetadata(connection, bucketName, finalObjectName, existingMetadata, metadata, eTag) ? metadata : null;
         } catch (Exception e) {
             LOGGER.error(SESSIONID, REGISTRATIONID,"Exception occured to addObjectMetaData for : " + container, ExceptionUtils.getStackTrace(e));
-            metadata = null;
             throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(), OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
-        } finally {
-            try {
-                if (s3Object != null)
-                    s3Object.close();
-            } catch (IOException e) {
-                LOGGER.error(SESSIONID, REGISTRATIONID,"IO occured : " + container, ExceptionUtils.getStackTrace(e));
-            }
         }
     }
 
+    /**
+     * Copies the object onto itself with the REPLACE metadata directive.
+     *
+     * @param eTag when not null the copy is applied only if the object still has this etag
+     * @return false when the etag precondition failed
+     */
+    protected boolean copyWithMetadata(AmazonS3 connection, String bucketName, String finalObjectName,
+                                       ObjectMetadata existingMetadata, Map<String, Object> metadata, String eTag) {
+        return copyWithMetadata(connection, bucketName, finalObjectName, existingMetadata, metadata, eTag, null);
+    }
+
+    /**
+     * Same as {@link #copyWithMetadata(AmazonS3, String, String, ObjectMetadata, Map, String)}, additionally
+     * applied only if the object was not modified after unmodifiedSince.
+     *
+     * @return false when a precondition failed
+     */
+    protected boolean copyWithMetadata(AmazonS3 connection, String bucketName, String finalObjectName,
+                                       ObjectMetadata existingMetadata, Map<String, Object> metadata, String eTag,
+                                       Date unmodifiedSince) {
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        if (existingMetadata.getContentType() != null)
+            objectMetadata.setContentType(existingMetadata.getContentType());
+        if (existingMetadata.getUserMetadata() != null)
+            existingMetadata.getUserMetadata().entrySet().forEach(m -> objectMetadata.addUserMetadata(m.getKey(), m.getValue()));
+        metadata.entrySet().stream().forEach(m -> objectMetadata.addUserMetadata(m.getKey(), m.getValue() != null ? m.getValue().toString() : null));
+        // setting new object metadata makes the sdk send the REPLACE metadata directive
+        CopyObjectRequest copyObjectRequest = new CopyObjectRequest(bucketName, finalObjectName, bucketName, finalObjectName)
+                .withNewObjectMetadata(objectMetadata);
+        if (eTag != null)
+            copyObjectRequest.withMatchingETagConstraint(eTag);
+        if (unmodifiedSince != null)
+            copyObjectRequest.withUnmodifiedSinceConstraint(unmodifiedSince);
+        return connection.copyObject(copyObjectRequest) != null;
+    }
+
     @Override
     public Map<String, Object> addObjectMetaData(String account, String container, String source, String process,
                                                  String objectName, String key, String value) {
@@ -220,57 +663,104 @@ public class S3Adapter implements ObjectStoreAdapter {
     @Override
     public Map<String, Object> getMetaData(String account, String container, String source, String process,
                                            String objectName) {
-        S3Object s3Object = null;
         try {
-        	 String finalObjectName=null;
-        	 String bucketName=null;
-        	if(useAccountAsBucketname) {
-        		 finalObjectName = ObjectStoreUtil.getName(container,source, process, objectName);
-        		 bucketName=account;
-        	}else {
-        		 finalObjectName = ObjectStoreUtil.getName(source, process, objectName);
-        		 bucketName=container;
-        	}
+            String bucketName = getBucketName(account, container, useAccountAsBucketname);
+            String finalObjectName = getFinalObjectName(container, source, process, objectName, useAccountAsBucketname);
             Map<String, Object> metaData = new HashMap<>();
 
-            s3Object = getConnection(bucketName).getObject(bucketName, finalObjectName);
-            ObjectMetadata objectMetadata = s3Object.getObjectMetadata();
+            // user metadata comes with the headers, no need to fetch the body
+            ObjectMetadata objectMetadata = getConnection(bucketName).getObjectMetadata(bucketName, finalObjectName);
             if (objectMetadata != null && objectMetadata.getUserMetadata() != null)
                 objectMetadata.getUserMetadata().entrySet().forEach(entry -> metaData.put(entry.getKey(), entry.getValue()));
             return metaData;
         } catch (Exception e) {
             LOGGER.error(SESSIONID, REGISTRATIONID,"Exception occured to getMetaData for : " + container, ExceptionUtils.getStackTrace(e));
             throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(), OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
-        } finally {
-            try {
-                if (s3Object != null)
-                    s3Object.close();
-            } catch (IOException e) {
-                LOGGER.error(SESSIONID, REGISTRATIONID,"IO occured : " + container, ExceptionUtils.getStackTrace(e));
-            }
         }
     }
 
     @Override
     public Integer incMetadata(String account, String container, String source, String process, String objectName, String metaDataKey) {
-        Map<String, Object> metadata = getMetaData(account, container, source, process, objectName);
-        if (metadata.get(metaDataKey) != null) {
-            metadata.put(metaDataKey, Integer.valueOf(metadata.get(metaDataKey).toString()) + 1);
-            addObjectMetaData(account, container, source, process, objectName, metadata);
-            return Integer.valueOf(metadata.get(metaDataKey).toString());
-        }
-        return null;
+        return updateCounter(account, container, source, process, objectName, metaDataKey, 1);
     }
 
     @Override
     public Integer decMetadata(String account, String container, String source, String process, String objectName, String metaDataKey) {
-        Map<String, Object> metadata = getMetaData(account, container, source, process, objectName);
-        if (metadata.get(metaDataKey) != null) {
-        	metadata.put(metaDataKey, Integer.valueOf(metadata.get(metaDataKey).toString()) - 1);
-            addObjectMetaData(account, container, source, process, objectName, metadata);
-            return Integer.valueOf(metadata.get(metaDataKey).toString());
+        return updateCounter(account, container, source, process, objectName, metaDataKey, -1);
+    }
+
+    /**
+     * Adds delta to a numeric metadata value. Concurrent deltas to the same key are merged into one write
+     * when object.store.metadata.counter.batch.window.ms is set.
+     *
+     * @return the new value, or null when the metadata key does not exist
+     */
+    public Integer updateCounter(String account, String container, String source, String process, String objectName,
+                                 String metaDataKey, int delta) {
+        String bucketName = getBucketName(account, container, useAccountAsBucketname);
+        String finalObjectName = getFinalObjectName(container, source, process, objectName, useAccountAsBucketname);
+        if (counterBatchWindow > 0)
+            return getCounterBatcher().add(ObjectStoreUtil.getName(bucketName, finalObjectName, metaDataKey),
+                    delta, combinedDelta -> applyCounterDelta(bucketName, finalObjectName, container, metaDataKey, combinedDelta));
+        return applyCounterDelta(bucketName, finalObjectName, container, metaDataKey, delta);
+    }
+
+    /**
+     * Each attempt to update an object from this instance holds a striped lock, so updates from this instance
+     * never lose a delta. The back off between attempts does not hold it. Across instances S3 offers no compare and swap on metadata: metadata only copies keep the etag of
+     * the content, so the copy is conditioned on the last modified time read with the value and retried when
+     * another writer got in between. Last modified has a precision of one second, so a conflicting update from
+     * another instance within the same second as the value read can still be lost. Callers sharing a counter
+     * across instances need an external lock or a store with conditional writes.
+     */
+    private Integer applyCounterDelta(String bucketName, String finalObjectName, String container, String metaDataKey,
+                                      int delta) {
+        ReentrantLock lock = counterLocks.get(bucketName + SEPARATOR + finalObjectName);
+        try {
+            AmazonS3 connection = getConnection(bucketName);
+            for (int attempt = 0; attempt <= counterMaxRetry; attempt++) {
+                // back off without the lock so that updates of other keys sharing the stripe go ahead
+                if (attempt > 0)
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(10, 50) * attempt);
+                lock.lock();
+                try {
+                    ObjectMetadata existingMetadata = connection.getObjectMetadata(bucketName, finalObjectName);
+                    String currentValue = existingMetadata.getUserMetaDataOf(metaDataKey);
+                    if (currentValue == null)
+                        return null;
+                    Integer value = Integer.valueOf(currentValue) + delta;
+                    Map<String, Object> metadata = new HashMap<>();
+                    metadata.put(metaDataKey, value);
+                    if (copyWithMetadata(connection, bucketName, finalObjectName, existingMetadata, metadata,
+                            existingMetadata.getETag(), existingMetadata.getLastModified()))
+                        return value;
+                } finally {
+                    lock.unlock();
+                }
+                LOGGER.info(SESSIONID, REGISTRATIONID, container, "Object modified while updating " + metaDataKey
+                        + ". Retry count : " + (attempt + 1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+        } catch (ObjectStoreAdapterException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured to update " + metaDataKey + " for : " + container,
+                    ExceptionUtils.getStackTrace(e));
+            throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
         }
-        return null;
+        LOGGER.error(SESSIONID, REGISTRATIONID, container, "Maximum retry limit exceeded while updating " + metaDataKey);
+        throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage());
+    }
+
+    private synchronized MetadataCounterBatcher getCounterBatcher() {
+        if (counterBatcher == null)
+            counterBatcher = new MetadataCounterBatcher(counterBatchWindow);
+        return counterBatcher;
     }
 
     @Override
@@ -309,76 +799,226 @@ public class S3Adapter implements ObjectStoreAdapter {
         return false;
     }
 
+    /**
+     * Returns the shared client. The client is validated once when it is created and afterwards by a
+     * background health check, so callers do not pay a round trip per operation.
+     *
+     * @param bucketName
+     * @return
+     */
     protected AmazonS3 getConnection(String bucketName) {
-        try {
-            if (connection != null) {
+        AmazonS3 client = connection;
+        if (client != null)
+            return client;
+        return createConnection(bucketName);
+    }
+
+    private synchronized AmazonS3 createConnection(String bucketName) {
+        if (connection != null)
+            return connection;
+        for (int retry = 0; ; retry++) {
+            try {
+                AWSCredentials awsCredentials = new BasicAWSCredentials(accessKey, secretKey);
+                AmazonS3 client = AmazonS3ClientBuilder.standard().withCredentials(new AWSStaticCredentialsProvider(awsCredentials))
+                        .enablePathStyleAccess().withClientConfiguration(new ClientConfiguration().withMaxConnections(maxConnection)
+                                .withMaxErrorRetry(maxRetry))
+                        .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(url, region)).build();
                 // test connection once before returning it
-                connection.doesBucketExistV2(bucketName);
-                return connection;
+                client.doesBucketExistV2(bucketName);
+                healthCheckBucket = bucketName;
+                connection = client;
+                scheduleHealthCheck();
+                return client;
+            } catch (Exception e) {
+                if (retry >= maxRetry) {
+                    LOGGER.error(SESSIONID, REGISTRATIONID, "Maximum retry limit exceeded. Could not obtain connection for " + bucketName + ". Retry count :" + retry, ExceptionUtils.getStackTrace(e));
+                    throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(), OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+                }
+                LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured while obtaining connection for " + bucketName + ". Will try again. Retry count : " + (retry + 1), ExceptionUtils.getStackTrace(e));
             }
-        } catch (Exception e) {
-            LOGGER.error(SESSIONID, REGISTRATIONID,"Exception occured while using existing connection for " + bucketName +". Will try to create new. Retry count : " + retry, ExceptionUtils.getStackTrace(e));
         }
-        try {
-            AWSCredentials awsCredentials = new BasicAWSCredentials(accessKey, secretKey);
-            connection = AmazonS3ClientBuilder.standard().withCredentials(new AWSStaticCredentialsProvider(awsCredentials))
-                    .enablePathStyleAccess().withClientConfiguration(new ClientConfiguration().withMaxConnections(maxConnection)
-                            .withMaxErrorRetry(maxRetry))
-                    .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(url, region)).build();
-            // test connection once before returning it
-            connection.doesBucketExistV2(bucketName);
-            retry = 0;
-            return connection;
+    }
 
+    private void scheduleHealthCheck() {
+        if (healthCheckExecutor != null || healthCheckInterval <= 0)
+            return;
+        healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "s3-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthCheckExecutor.scheduleWithFixedDelay(this::checkConnectionHealth, healthCheckInterval,
+                healthCheckInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Drops the shared client when the store is not reachable so that the next operation creates a new one.
+     * The dropped client is shut down after one more interval to let in-flight requests finish.
+     */
+    private void checkConnectionHealth() {
+        AmazonS3 client = connection;
+        if (client == null)
+            return;
+        try {
+            client.doesBucketExistV2(healthCheckBucket);
         } catch (Exception e) {
-            if (retry >= maxRetry) {
-                LOGGER.error(SESSIONID, REGISTRATIONID,"Maximum retry limit exceeded. Could not obtain connection for "+ bucketName +". Retry count :" + retry, ExceptionUtils.getStackTrace(e));
-                throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(), OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
-            } else {
-                retry = retry + 1;
-                LOGGER.error(SESSIONID, REGISTRATIONID,"Exception occured while obtaining connection for "+ bucketName +". Will try again. Retry count : " + retry, ExceptionUtils.getStackTrace(e));
-                getConnection(bucketName);
+            LOGGER.error(SESSIONID, REGISTRATIONID, "Health check failed for existing connection. Will create new on next use.",
+                    ExceptionUtils.getStackTrace(e));
+            synchronized (this) {
+                if (connection == client)
+                    connection = null;
             }
+            healthCheckExecutor.schedule(client::shutdown, healthCheckInterval, TimeUnit.SECONDS);
         }
-        return null;
     }
 
-    public List<ObjectDto> getAllObjects(String account, String id) {
+    /**
+     * Checks the bucket against the known bucket cache before asking the object store.
+     *
+     * @param connection
+     * @param bucketName
+     * @return
+     */
+    protected boolean doesBucketExists(AmazonS3 connection, String bucketName) {
+        Map<String, Boolean> buckets = getExistingBuckets();
+        if (buckets.containsKey(bucketName))
+            return true;
+        boolean doesBucketExistsInObjectStore = connection.doesBucketExistV2(bucketName);
+        if (doesBucketExistsInObjectStore)
+            buckets.put(bucketName, Boolean.TRUE);
+        return doesBucketExistsInObjectStore;
+    }
 
-        String searchPattern = id + SEPARATOR;
-        List<S3ObjectSummary> os = null;
-   	   if(useAccountAsBucketname)
-           os = getConnection(account).listObjects(account, searchPattern).getObjectSummaries();
-   	   else
-           os = getConnection(id).listObjects(searchPattern).getObjectSummaries();
-
-        if (os != null && os.size() > 0) {
-            List<ObjectDto> objectDtos = new ArrayList<>();
-            os.forEach(o -> {
-                // ignore the Tag file
-                String[] tempKeys = o.getKey().endsWith(TAGS_FILENAME) ? null : o.getKey().split("/");
-                String[] keys = removeIdFromObjectPath(useAccountAsBucketname, tempKeys);
-                if (ArrayUtils.isNotEmpty(keys)) {
-                    ObjectDto objectDto = null;
-                    switch (keys.length) {
-                        case 1:
-                            objectDto = new ObjectDto(null, null, keys[0], o.getLastModified());
-                            break;
-                        case 2:
-                            objectDto = new ObjectDto(keys[0], null, keys[1], o.getLastModified());
-                            break;
-                        case 3:
-                            objectDto = new ObjectDto(keys[0], keys[1], keys[2], o.getLastModified());
-                            break;
-                    }
-                    if (objectDto != null)
-                        objectDtos.add(objectDto);
+    protected void createBucketIfNotExists(AmazonS3 connection, String bucketName) {
+        if (!doesBucketExists(connection, bucketName)) {
+            connection.createBucket(bucketName);
+            getExistingBuckets().put(bucketName, Boolean.TRUE);
+        }
+    }
+
+    private synchronized Map<String, Boolean> getExistingBuckets() {
+        if (existingBuckets == null) {
+            final int maxSize = bucketCacheSize;
+            existingBuckets = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > maxSize;
                 }
             });
-            return objectDtos;
         }
+        return existingBuckets;
+    }
+
+    public List<ObjectDto> getAllObjects(String account, String id) {
+        List<ObjectDto> objectDtos;
+        try (Stream<ObjectDto> objects = streamAllObjects(account, id)) {
+            objectDtos = objects.collect(Collectors.toList());
+        }
+        return objectDtos.isEmpty() ? null : objectDtos;
+    }
 
-        return null;
+    /**
+     * Lists the container with ListObjectsV2, following continuation tokens as the stream is consumed.
+     * The next page is fetched in the background while the current one is processed, so only two pages are
+     * held in memory at a time.
+     */
+    @Override
+    public Stream<ObjectDto> streamAllObjects(String account, String id) {
+        String bucketName = useAccountAsBucketname ? account : id;
+        String prefix = useAccountAsBucketname ? id + SEPARATOR : null;
+        ObjectListingIterator iterator = new ObjectListingIterator(getConnection(bucketName), bucketName, prefix);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close)
+                .map(this::toObjectDto)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Converts a listed key to ObjectDto. Returns null for keys which are not objects, like the tag file.
+     *
+     * @param objectSummary
+     * @return
+     */
+    protected ObjectDto toObjectDto(S3ObjectSummary objectSummary) {
+        // ignore the Tag file
+        String[] tempKeys = objectSummary.getKey().endsWith(TAGS_FILENAME) ? null : objectSummary.getKey().split("/");
+        return toObjectDto(removeIdFromObjectPath(useAccountAsBucketname, tempKeys), objectSummary.getLastModified());
+    }
+
+    protected ObjectDto toObjectDto(String[] keys, Date lastModified) {
+        if (ArrayUtils.isEmpty(keys))
+            return null;
+        switch (keys.length) {
+            case 1:
+                return new ObjectDto(null, null, keys[0], lastModified);
+            case 2:
+                return new ObjectDto(keys[0], null, keys[1], lastModified);
+            case 3:
+                return new ObjectDto(keys[0], keys[1], keys[2], lastModified);
+            default:
+                return null;
+        }
+    }
+
+    private class ObjectListingIterator implements Iterator<S3ObjectSummary> {
+
+        private final AmazonS3 connection;
+        private final String bucketName;
+        private final String prefix;
+        private Iterator<S3ObjectSummary> page = null;
+        private Future<ListObjectsV2Result> nextPage = null;
+
+        private ObjectListingIterator(AmazonS3 connection, String bucketName, String prefix) {
+            this.connection = connection;
+            this.bucketName = bucketName;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                if (page == null)
+                    setPage(connection.listObjectsV2(listRequest(null)));
+                while (!page.hasNext() && nextPage != null)
+                    setPage(nextPage.get());
+                return page.hasNext();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                        OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+            } catch (Exception e) {
+                LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured while listing : " + bucketName,
+                        ExceptionUtils.getStackTrace(e));
+                throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                        OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+            }
+        }
+
+        @Override
+        public S3ObjectSummary next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return page.next();
+        }
+
+        private void setPage(ListObjectsV2Result result) {
+            page = result.getObjectSummaries().iterator();
+            nextPage = null;
+            if (result.isTruncated()) {
+                ListObjectsV2Request request = listRequest(result.getNextContinuationToken());
+                nextPage = getTransferExecutor().submit(() -> connection.listObjectsV2(request));
+            }
+        }
+
+        private ListObjectsV2Request listRequest(String continuationToken) {
+            return new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix)
+                    .withMaxKeys(listPageSize).withContinuationToken(continuationToken);
+        }
+
+        private void close() {
+            if (nextPage != null)
+                nextPage.cancel(true);
+        }
     }
 
     /**
@@ -388,7 +1028,7 @@ public class S3Adapter implements ObjectStoreAdapter {
      * @param useAccountAsBucketname
      * @param keys
      */
-    private String[] removeIdFromObjectPath(boolean useAccountAsBucketname, String[] keys) {
+    protected String[] removeIdFromObjectPath(boolean useAccountAsBucketname, String[] keys) {
         return (useAccountAsBucketname && ArrayUtils.isNotEmpty(keys)) ?
                 (String[]) ArrayUtils.remove(keys, 0) : keys;
     }
@@ -407,8 +1047,7 @@ public class S3Adapter implements ObjectStoreAdapter {
         		 finalObjectName = TAGS_FILENAME;
         	}
 			AmazonS3 connection = getConnection(bucketName);
-			if (!connection.doesBucketExistV2(bucketName))
-	            connection.createBucket(bucketName);
+			createBucketIfNotExists(connection, bucketName);
 			
 			Map<String, String> existingMetadata=getTags(account, container);
 			if(!connection.doesObjectExist(bucketName, finalObjectName)) {
@@ -4,22 +4,32 @@ import static io.mosip.commons.khazana.config.LoggerConfiguration.REGISTRATIONID
 import static io.mosip.commons.khazana.config.LoggerConfiguration.SESSIONID;
 import static io.mosip.commons.khazana.constant.KhazanaConstant.TAGS_FILENAME;
 import static io.mosip.commons.khazana.constant.KhazanaErrorCodes.OBJECT_STORE_NOT_ACCESSIBLE;
+import static io.mosip.commons.khazana.constant.KhazanaErrorCodes.TAG_OPERATION_FAILED;
 
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import io.mosip.commons.khazana.config.LoggerConfiguration;
@@ -39,7 +49,13 @@ public class S3AdapterV2 extends S3Adapter {
 
     private static final String TAG_BACKWARD_COMPATIBILITY_ERROR = "Object-prefix is already an object, please choose a different object-prefix name";
 
-    private List<String> existingBuckets = new ArrayList<>();
+    /**
+     * Threads for tag reads and writes. Tags have their own pool so they never queue behind bulk transfers.
+     */
+    @Value("${object.store.s3.tag.threads:8}")
+    private int tagThreads;
+
+    private ExecutorService tagExecutor = null;
 
     @Override
     public Map<String, String> addTags(String account, String container, Map<String, String> tags) {
@@ -55,22 +71,21 @@ public class S3AdapterV2 extends S3Adapter {
                 finalObjectName = TAGS_FILENAME;
             }
             connection = getConnection(bucketName);
-            if (!doesBucketExists(connection, bucketName)) {
-                connection.createBucket(bucketName);
-                if (useAccountAsBucketname)
-                    existingBuckets.add(bucketName);
-            }
-            for (Entry<String, String> entry : tags.entrySet()) {
-                String tagName = null;
-                InputStream data = IOUtils.toInputStream(entry.getValue(), StandardCharsets.UTF_8);
-                tagName = ObjectStoreUtil.getName(finalObjectName, entry.getKey());
-                connection.putObject(bucketName, tagName, data, null);
-            }
+            createBucketIfNotExists(connection, bucketName);
+            final AmazonS3 tagConnection = connection;
+            final String tagBucketName = bucketName;
+            final String tagPrefix = finalObjectName;
+            runPerTag(tags.keySet(), container, tagName -> {
+                tagConnection.putObject(tagBucketName, ObjectStoreUtil.getName(tagPrefix, tagName), tags.get(tagName));
+                return tagName;
+            });
         } catch (Exception e) {
             // this check is introduced to support backward compatibility
             if (e instanceof AmazonS3Exception && e.getMessage().contains(TAG_BACKWARD_COMPATIBILITY_ERROR)) {
                 connection.deleteObject(bucketName, finalObjectName);
                 addTags(account, container, tags);
+            } else if (e instanceof ObjectStoreAdapterException) {
+                throw (ObjectStoreAdapterException) e;
             } else {
                 connection = null;
                 LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured while addTags for : " + container,
@@ -97,11 +112,8 @@ public class S3AdapterV2 extends S3Adapter {
             }
             AmazonS3 connection = getConnection(bucketName);
 
-            List<S3ObjectSummary> objectSummary = null;
-            if (useAccountAsBucketname)
-                objectSummary = connection.listObjects(bucketName, finalObjectName).getObjectSummaries();
-            else
-                objectSummary = connection.listObjects(bucketName).getObjectSummaries();
+            // list only the tag prefix instead of the whole bucket
+            List<S3ObjectSummary> objectSummary = connection.listObjects(bucketName, finalObjectName).getObjectSummaries();
 
             List<String> tagNames = new ArrayList<String>();
             if (objectSummary != null && objectSummary.size() > 0) {
@@ -118,10 +130,13 @@ public class S3AdapterV2 extends S3Adapter {
                     }
                 });
             }
-            for (String tagName : tagNames) {
-                objectTags.put(tagName, connection.getObjectAsString(bucketName, finalObjectName + tagName));
-            }
+            final String tagBucketName = bucketName;
+            final String tagPrefix = finalObjectName;
+            objectTags.putAll(runPerTag(tagNames, container,
+                    tagName -> connection.getObjectAsString(tagBucketName, tagPrefix + tagName)));
             return objectTags;
+        } catch (ObjectStoreAdapterException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured while getTags for : " + container,
                     ExceptionUtils.getStackTrace(e));
@@ -130,79 +145,85 @@ public class S3AdapterV2 extends S3Adapter {
         }
     }
 
-    @Override
-    public List<ObjectDto> getAllObjects(String account, String id) {
-
-        String searchPattern = id + SEPARATOR;
-        List<S3ObjectSummary> os = null;
-        if (useAccountAsBucketname)
-            os = getConnection(account).listObjects(account, searchPattern).getObjectSummaries();
-        else
-            os = getConnection(id).listObjects(searchPattern).getObjectSummaries();
-
-        if (os != null && os.size() > 0) {
-            List<ObjectDto> objectDtos = new ArrayList<>();
-            os.forEach(o -> {
-                // ignore the Tag file
-                String[] tempKeys = o.getKey().split("/");
-                if (useAccountAsBucketname) {
-                    if (tempKeys[1] != null && tempKeys[1].endsWith(TAGS_FILENAME))
-                        tempKeys = null;
-                } else {
-                    if (tempKeys[0] != null && tempKeys[0].endsWith(TAGS_FILENAME))
-                        tempKeys = null;
-                }
-
-                String[] keys = removeIdFromObjectPath(useAccountAsBucketname, tempKeys);
-                if (ArrayUtils.isNotEmpty(keys)) {
-                    ObjectDto objectDto = null;
-                    switch (keys.length) {
-                        case 1:
-                            objectDto = new ObjectDto(null, null, keys[0], o.getLastModified());
-                            break;
-                        case 2:
-                            objectDto = new ObjectDto(keys[0], null, keys[1], o.getLastModified());
-                            break;
-                        case 3:
-                            objectDto = new ObjectDto(keys[0], keys[1], keys[2], o.getLastModified());
-                            break;
-                    }
-                    if (objectDto != null)
-                        objectDtos.add(objectDto);
-                }
-            });
-            return objectDtos;
+    /**
+     * Runs the operation for every tag concurrently on the tag executor, so a container with many tags costs a few
+     * round trips of latency. All tags are attempted. When some of them fail, the failed tag names are
+     * reported together in one exception.
+     *
+     * @return result of the operation by tag name
+     */
+    private Map<String, String> runPerTag(Collection<String> tagNames, String container, TagOperation operation)
+            throws Exception {
+        Map<String, Future<String>> futures = new LinkedHashMap<>();
+        for (String tagName : tagNames)
+            futures.put(tagName, getTagExecutor().submit(() -> operation.apply(tagName)));
+
+        Map<String, String> results = new HashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (Entry<String, Future<String>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (ExecutionException e) {
+                failures.put(future.getKey(), e.getCause());
+            }
         }
+        if (!failures.isEmpty()) {
+            Throwable cause = failures.values().iterator().next();
+            // surfaced as is so that addTags can handle the backward compatibility error
+            if (cause instanceof AmazonS3Exception && cause.getMessage().contains(TAG_BACKWARD_COMPATIBILITY_ERROR))
+                throw (AmazonS3Exception) cause;
+            LOGGER.error(SESSIONID, REGISTRATIONID, "Tag operation failed for : " + container + " tags : "
+                    + failures.keySet(), ExceptionUtils.getStackTrace(cause));
+            throw new ObjectStoreAdapterException(TAG_OPERATION_FAILED.getErrorCode(),
+                    TAG_OPERATION_FAILED.getErrorMessage() + failures.keySet(), cause);
+        }
+        return results;
+    }
 
-        return null;
+    private interface TagOperation {
+        String apply(String tagName) throws Exception;
     }
 
     /**
-     * If account is used as bucket name then first element of array is the packet
-     * id.
-     * This method removes packet id from array so that path is same irrespective of
-     * useAccountAsBucketname is true or false
-     *
-     * @param useAccountAsBucketname
-     * @param keys
+     * Bounded pool for tag operations. When the queue is full the caller runs the operation itself, which slows
+     * down submitters instead of growing the queue.
      */
-    private String[] removeIdFromObjectPath(boolean useAccountAsBucketname, String[] keys) {
-        return (useAccountAsBucketname && ArrayUtils.isNotEmpty(keys)) ? (String[]) ArrayUtils.remove(keys, 0) : keys;
+    private synchronized ExecutorService getTagExecutor() {
+        if (tagExecutor == null) {
+            int threads = Math.max(1, tagThreads);
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(threads * 16), runnable -> {
+                        Thread thread = new Thread(runnable, "s3-tag-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            tagExecutor = executor;
+        }
+        return tagExecutor;
+    }
+
+    @Override
+    @PreDestroy
+    public synchronized void shutdownExecutors() {
+        super.shutdownExecutors();
+        if (tagExecutor != null)
+            tagExecutor.shutdownNow();
     }
 
-    private boolean doesBucketExists(AmazonS3 connection, String bucketName) {
-        // use account as bucket name and bucket name is present in existing bucket list
-        if (useAccountAsBucketname && existingBuckets.contains(bucketName))
-            return true;
-        // use account as bucket name and bucket name is not present in existing bucket
-        // list
-        else if (useAccountAsBucketname && !existingBuckets.contains(bucketName)) {
-            boolean doesBucketExistsInObjectStore = connection.doesBucketExistV2(bucketName);
-            if (doesBucketExistsInObjectStore)
-                existingBuckets.add(bucketName);
-            return doesBucketExistsInObjectStore;
-        } else
-            return connection.doesBucketExistV2(bucketName);
+    @Override
+    protected ObjectDto toObjectDto(S3ObjectSummary objectSummary) {
+        // ignore the Tag file
+        String[] tempKeys = objectSummary.getKey().split("/");
+        if (useAccountAsBucketname) {
+            if (tempKeys.length > 1 && tempKeys[1].endsWith(TAGS_FILENAME))
+                tempKeys = null;
+        } else {
+            if (tempKeys[0] != null && tempKeys[0].endsWith(TAGS_FILENAME))
+                tempKeys = null;
+        }
+        return toObjectDto(removeIdFromObjectPath(useAccountAsBucketname, tempKeys), objectSummary.getLastModified());
     }
 
 }
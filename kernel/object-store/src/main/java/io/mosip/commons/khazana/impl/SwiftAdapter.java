@@ -1,14 +1,51 @@
 package io.mosip.commons.khazana.impl;
 
+import static io.mosip.commons.khazana.constant.KhazanaErrorCodes.OBJECT_STORE_NOT_ACCESSIBLE;
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.PreDestroy;
 
 import io.mosip.commons.khazana.dto.ObjectDto;
+import io.mosip.commons.khazana.exception.ObjectStoreAdapterException;
 import io.mosip.commons.khazana.spi.ObjectStoreAdapter;
 import org.javaswift.joss.client.factory.AccountConfig;
 import org.javaswift.joss.client.factory.AccountFactory;
 import org.javaswift.joss.client.factory.AuthenticationMethod;
+import org.apache.commons.io.IOUtils;
+import org.javaswift.joss.headers.object.ObjectManifest;
+import org.javaswift.joss.headers.object.range.AbstractRange;
+import org.javaswift.joss.headers.object.range.ExcludeStartRange;
+import org.javaswift.joss.headers.object.range.LastPartRange;
+import org.javaswift.joss.headers.object.range.MidPartRange;
+import org.javaswift.joss.instructions.DownloadInstructions;
+import org.javaswift.joss.instructions.UploadInstructions;
 import org.javaswift.joss.model.Account;
 import org.javaswift.joss.model.Container;
 import org.javaswift.joss.model.StoredObject;
@@ -28,46 +65,238 @@ import java.util.List;
 public class SwiftAdapter implements ObjectStoreAdapter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SwiftAdapter.class);
+    private static final String SEGMENTS = "_segments";
+    private static final int INITIAL_BUFFER_SIZE = 65536;
 
 
-    @Value("object.store.swift.username:test")
+    @Value("${object.store.swift.username:test}")
     private String userName;
 
-    @Value("object.store.swift.password:test")
+    @Value("${object.store.swift.password:test}")
     private String password;
 
-    @Value("object.store.swift.url:null")
+    @Value("${object.store.swift.url:null}")
     private String authUrl;
 
-    private Map<String, Account> accounts = new HashMap<>();
+    /**
+     * Lifetime of an auth token. Tokens are renewed before they reach it.
+     */
+    @Value("${object.store.swift.token.lifetime.seconds:3600}")
+    private long tokenLifetime;
+
+    /**
+     * How long before the end of the token lifetime it is renewed.
+     */
+    @Value("${object.store.swift.token.refresh.margin.seconds:300}")
+    private long tokenRefreshMargin;
+
+    @Value("${object.store.swift.container.cache.size:10000}")
+    private int containerCacheSize;
+
+    @Value("${object.store.swift.list.pagesize:1000}")
+    private int listPageSize;
+
+    /**
+     * Threads fetching object metadata in parallel when a whole container is read.
+     */
+    @Value("${object.store.swift.metadata.threads:8}")
+    private int metadataThreads;
+
+    /**
+     * Objects of at least this size are uploaded as parallel segments behind a manifest. 0 disables
+     * segmentation.
+     */
+    @Value("${object.store.swift.segment.size:16777216}")
+    private int segmentSize;
+
+    @Value("${object.store.swift.segment.retry:3}")
+    private int segmentRetry;
+
+    @Value("${object.store.swift.transfer.threads:4}")
+    private int transferThreads;
+
+    private final Map<String, AccountHolder> accounts = new ConcurrentHashMap<>();
+
+    private ExecutorService metadataExecutor = null;
+
+    private ExecutorService transferExecutor = null;
+
+    private Map<String, Boolean> existingContainers = null;
 
 
     public InputStream getObject(String account, String containerName, String source, String process, String objectName) {
-        Container container = getConnection(account).getContainer(containerName);
-        if (!container.exists())
-            container = getConnection(account).getContainer(containerName).create();
+        Container container = getContainer(account, containerName, true);
         return container.getObject(objectName).downloadObjectAsInputStream();
     }
 
+    public InputStream getObjectRange(String account, String containerName, String source, String process, String objectName,
+                                      long offset, long length) {
+        AbstractRange range = length < 0 ? new ExcludeStartRange(offset) : new MidPartRange(offset, offset + length - 1);
+        return getObject(account, containerName, objectName, range);
+    }
+
+    public InputStream getObjectSuffix(String account, String containerName, String source, String process, String objectName,
+                                       long length) {
+        return getObject(account, containerName, objectName, new LastPartRange(length));
+    }
+
+    private InputStream getObject(String account, String containerName, String objectName, AbstractRange range) {
+        Container container = getContainer(account, containerName, false);
+        if (container == null)
+            return null;
+        return container.getObject(objectName).downloadObjectAsInputStream(new DownloadInstructions().setRange(range));
+    }
+
     public boolean putObject(String account, String containerName, String source, String process, String objectName, InputStream data) {
-        Container container = getConnection(account).getContainer(containerName);
-        if (!container.exists())
-            container = getConnection(account).getContainer(containerName).create();
+        Container container = getContainer(account, containerName, true);
         StoredObject storedObject = container.getObject(objectName);
-        storedObject.uploadObject(data);
-
+        if (segmentSize <= 0) {
+            storedObject.uploadObject(data);
+            return true;
+        }
+        try {
+            // grow the buffer as data arrives, so small objects do not allocate a whole segment
+            byte[] firstSegment = new byte[Math.min(segmentSize, INITIAL_BUFFER_SIZE)];
+            int length = 0;
+            while (true) {
+                if (length == firstSegment.length) {
+                    if (length >= segmentSize)
+                        break;
+                    firstSegment = Arrays.copyOf(firstSegment, (int) Math.min(segmentSize, 2L * length));
+                }
+                int read = data.read(firstSegment, length, firstSegment.length - length);
+                if (read < 0)
+                    break;
+                length += read;
+            }
+            if (length < segmentSize)
+                storedObject.uploadObject(length == firstSegment.length ? firstSegment : Arrays.copyOf(firstSegment, length));
+            else
+                segmentedUpload(account, container, storedObject, firstSegment, data);
+        } catch (IOException e) {
+            LOGGER.error("exception occured to put object - " + objectName, e);
+            throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+        }
         return true;
     }
 
+    /**
+     * Uploads the stream as segments in parallel and then commits a dynamic large object manifest pointing to
+     * them, so reads stream through all segments transparently. Segments go to the &lt;container&gt;_segments
+     * container under a random prefix unique to the upload. At most two segments per transfer thread are held in
+     * memory. Segments of a failed upload are deleted. After the commit only the segments of the manifest that
+     * was replaced are deleted, read just before the commit, so concurrent uploads of the same object and
+     * objects whose name starts with this one keep their segments. A replaced upload that committed between
+     * the read and the commit leaves its segments behind, which wastes space but never breaks a manifest.
+     */
+    private void segmentedUpload(String account, Container container, StoredObject storedObject, byte[] firstSegment,
+                                 InputStream data) throws IOException {
+        Container segmentContainer = getContainer(account, container.getName() + SEGMENTS, true);
+        String objectPrefix = storedObject.getName() + "/";
+        String uploadPrefix = objectPrefix + UUID.randomUUID() + "/";
+        Semaphore inFlight = new Semaphore(Math.max(1, transferThreads) * 2);
+        List<Future<?>> segments = new ArrayList<>();
+        try {
+            int segmentNumber = 1;
+            segments.add(submitSegment(segmentContainer, uploadPrefix, segmentNumber++, firstSegment, firstSegment.length, inFlight));
+            while (true) {
+                byte[] segment = new byte[segmentSize];
+                int length = IOUtils.read(data, segment);
+                if (length == 0)
+                    break;
+                segments.add(submitSegment(segmentContainer, uploadPrefix, segmentNumber++, segment, length, inFlight));
+                if (length < segment.length)
+                    break;
+            }
+            for (Future<?> segment : segments)
+                segment.get();
+            String replacedPrefix = getSegmentPrefix(storedObject, segmentContainer, objectPrefix);
+            storedObject.uploadObject(new UploadInstructions(new byte[0])
+                    .setObjectManifest(new ObjectManifest(segmentContainer.getName() + "/" + uploadPrefix)));
+            if (replacedPrefix != null && !replacedPrefix.equals(uploadPrefix))
+                deleteSegments(segmentContainer, replacedPrefix);
+        } catch (InterruptedException | ExecutionException | RuntimeException e) {
+            segments.forEach(segment -> segment.cancel(true));
+            deleteSegments(segmentContainer, uploadPrefix);
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            throw new ObjectStoreAdapterException(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+        }
+    }
+
+    /**
+     * Segment prefix of the manifest currently stored for the object, or null when the object is not a manifest
+     * over segments written by this adapter.
+     */
+    private String getSegmentPrefix(StoredObject storedObject, Container segmentContainer, String objectPrefix) {
+        try {
+            if (!storedObject.exists())
+                return null;
+            ObjectManifest manifest = storedObject.getObjectManifest();
+            if (manifest == null || manifest.getHeaderValue() == null
+                    || !segmentContainer.getName().equals(manifest.getContainerName()))
+                return null;
+            String prefix = manifest.getObjectPrefix();
+            // only an upload prefix of this object, never a prefix that other objects share
+            if (prefix == null || !prefix.startsWith(objectPrefix) || !prefix.endsWith("/")
+                    || prefix.indexOf('/', objectPrefix.length()) != prefix.length() - 1)
+                return null;
+            return prefix;
+        } catch (RuntimeException e) {
+            LOGGER.error("exception occured to read manifest of - " + storedObject.getName(), e);
+            return null;
+        }
+    }
+
+    private Future<?> submitSegment(Container segmentContainer, String uploadPrefix, int segmentNumber, byte[] segment,
+                                    int length, Semaphore inFlight) throws InterruptedException {
+        inFlight.acquire();
+        // zero padded so that the manifest concatenates segments in upload order
+        String segmentName = uploadPrefix + String.format("%08d", segmentNumber);
+        return getTransferExecutor().submit(() -> {
+            try {
+                for (int attempt = 0; ; attempt++) {
+                    try {
+                        segmentContainer.getObject(segmentName).uploadObject(
+                                length == segment.length ? segment : Arrays.copyOf(segment, length));
+                        return null;
+                    } catch (RuntimeException e) {
+                        if (attempt >= segmentRetry)
+                            throw e;
+                        LOGGER.error("exception occured to upload segment " + segmentName + ". Retry count : "
+                                + (attempt + 1), e);
+                    }
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Deletes the segments under the upload prefix. Failures are only logged.
+     */
+    private void deleteSegments(Container segmentContainer, String uploadPrefix) {
+        try {
+            Iterator<StoredObject> segments = new ObjectListingIterator(segmentContainer, uploadPrefix);
+            while (segments.hasNext())
+                segments.next().delete();
+        } catch (RuntimeException e) {
+            LOGGER.error("exception occured to delete segments - " + uploadPrefix, e);
+        }
+    }
+
     public boolean exists(String account, String containerName, String source, String process, String objectName) {
-        Container container = getConnection(account).getContainer(containerName);
-        return container.exists() && container.getObject(objectName).exists();
+        Container container = getContainer(account, containerName, false);
+        return container != null && container.getObject(objectName).exists();
     }
 
     public Map<String, Object> addObjectMetaData(String account, String containerName, String source, String process, String objectName, Map<String, Object> metadata) {
 
-        Container container = getConnection(account).getContainer(containerName);
-        if (!container.exists())
+        Container container = getContainer(account, containerName, false);
+        if (container == null)
             return null;
         StoredObject storedObject = container.getObject(objectName);
         storedObject.setMetadata(metadata);
@@ -76,8 +305,8 @@ public class SwiftAdapter implements ObjectStoreAdapter {
     }
 
     public Map<String, Object> addObjectMetaData(String account, String containerName, String source, String process, String objectName, String key, String value) {
-        Container container = getConnection(account).getContainer(containerName);
-        if (!container.exists())
+        Container container = getContainer(account, containerName, false);
+        if (container == null)
             return null;
         StoredObject storedObject = container.getObject(objectName);
         storedObject.getMetadata();
@@ -90,11 +319,11 @@ public class SwiftAdapter implements ObjectStoreAdapter {
 
     public Map<String, Object> getMetaData(String account, String containerName, String source, String process, String objectName) {
         Map<String, Object> metaData = new HashMap<>();
-        Container container = getConnection(account).getContainer(containerName);
-        if (!container.exists())
+        Container container = getContainer(account, containerName, false);
+        if (container == null)
             return null;
         if (objectName == null)
-            container.list().forEach(obj -> metaData.put(obj.getName(), obj.getMetadata()));
+            metaData.putAll(getAllMetaData(container));
         else {
             StoredObject storedObject = container.getObject(objectName);
             metaData.put(storedObject.getName(), storedObject.getMetadata());
@@ -102,19 +331,168 @@ public class SwiftAdapter implements ObjectStoreAdapter {
         return metaData;
     }
 
+    /**
+     * Reads the metadata of every object page by page. The objects of a page are fetched in parallel on the
+     * metadata executor, so at most one page of requests is in flight.
+     */
+    private Map<String, Object> getAllMetaData(Container container) {
+        Map<String, Object> metaData = new HashMap<>();
+        Iterator<StoredObject> objects = new ObjectListingIterator(container, null);
+        List<StoredObject> page = new ArrayList<>(listPageSize);
+        while (objects.hasNext()) {
+            page.add(objects.next());
+            if (page.size() == listPageSize || !objects.hasNext()) {
+                Map<String, Future<Map<String, Object>>> futures = new LinkedHashMap<>();
+                page.forEach(obj -> futures.put(obj.getName(), getMetadataExecutor().submit(obj::getMetadata)));
+                for (Map.Entry<String, Future<Map<String, Object>>> future : futures.entrySet()) {
+                    try {
+                        metaData.put(future.getKey(), future.getValue().get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while fetching metadata", e);
+                    } catch (ExecutionException e) {
+                        LOGGER.error("exception occured to get metadata for object - " + future.getKey(), e.getCause());
+                    }
+                }
+                page.clear();
+            }
+        }
+        return metaData;
+    }
+
+    private synchronized ExecutorService getMetadataExecutor() {
+        if (metadataExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            metadataExecutor = Executors.newFixedThreadPool(Math.max(1, metadataThreads), runnable -> {
+                Thread thread = new Thread(runnable, "swift-metadata-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return metadataExecutor;
+    }
+
+    private synchronized ExecutorService getTransferExecutor() {
+        if (transferExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            transferExecutor = Executors.newFixedThreadPool(Math.max(1, transferThreads), runnable -> {
+                Thread thread = new Thread(runnable, "swift-transfer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return transferExecutor;
+    }
+
+    @PreDestroy
+    public synchronized void shutdownExecutors() {
+        if (metadataExecutor != null)
+            metadataExecutor.shutdownNow();
+        if (transferExecutor != null)
+            transferExecutor.shutdownNow();
+    }
+
     private Account getConnection(String accountName) {
-        if (!accounts.isEmpty() && accounts.get(accountName) != null)
-            return accounts.get(accountName);
+        return accounts.computeIfAbsent(accountName, AccountHolder::new).get();
+    }
 
+    private Account createAccount(String accountName) {
         AccountConfig config = new AccountConfig();
         config.setUsername(userName);
         config.setPassword(password);
         config.setAuthUrl(authUrl);
         config.setTenantName(accountName);
         config.setAuthenticationMethod(AuthenticationMethod.BASIC);
-        Account account = new AccountFactory(config).setAllowReauthenticate(true).createAccount();
-        accounts.put(accountName, account);
-        return account;
+        return new AccountFactory(config).setAllowReauthenticate(true).createAccount();
+    }
+
+    /**
+     * Returns the container, checking the known container cache before asking Swift.
+     *
+     * @param create create the container when it does not exist
+     * @return the container, or null when it does not exist and create is false
+     */
+    private Container getContainer(String accountName, String containerName, boolean create) {
+        Map<String, Boolean> containers = getExistingContainers();
+        String key = accountName + "/" + containerName;
+        Container container = getConnection(accountName).getContainer(containerName);
+        if (containers.containsKey(key))
+            return container;
+        if (!container.exists()) {
+            if (!create)
+                return null;
+            container = container.create();
+        }
+        containers.put(key, Boolean.TRUE);
+        return container;
+    }
+
+    private synchronized Map<String, Boolean> getExistingContainers() {
+        if (existingContainers == null) {
+            final int maxSize = containerCacheSize;
+            existingContainers = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > maxSize;
+                }
+            });
+        }
+        return existingContainers;
+    }
+
+    /**
+     * Authenticated account of one tenant. The token is renewed when it enters the refresh margin: one caller
+     * renews it while the others keep using the current token, so expiry never causes a burst of logins.
+     * Callers only wait when the token has outlived its lifetime.
+     */
+    private class AccountHolder {
+
+        private final String accountName;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Account account = null;
+        private volatile long authenticatedAt = 0;
+
+        private AccountHolder(String accountName) {
+            this.accountName = accountName;
+        }
+
+        private Account get() {
+            Account current = account;
+            long age = System.currentTimeMillis() - authenticatedAt;
+            if (current != null && age < TimeUnit.SECONDS.toMillis(tokenLifetime - tokenRefreshMargin))
+                return current;
+            if (current != null && age < TimeUnit.SECONDS.toMillis(tokenLifetime)) {
+                if (lock.tryLock()) {
+                    try {
+                        if (System.currentTimeMillis() - authenticatedAt >= TimeUnit.SECONDS.toMillis(tokenLifetime - tokenRefreshMargin))
+                            refresh();
+                    } catch (RuntimeException e) {
+                        // the current token is still valid, the next caller retries the renewal
+                        LOGGER.warn("exception occured to renew token for account - " + accountName, e);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                return account;
+            }
+            lock.lock();
+            try {
+                if (account == null || System.currentTimeMillis() - authenticatedAt >= TimeUnit.SECONDS.toMillis(tokenLifetime))
+                    refresh();
+                return account;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refresh() {
+            long now = System.currentTimeMillis();
+            if (account == null)
+                account = createAccount(accountName);
+            else
+                account.authenticate();
+            authenticatedAt = now;
+        }
     }
 
     @Override
@@ -167,9 +545,7 @@ public class SwiftAdapter implements ObjectStoreAdapter {
 	@Override
 	public Map<String, String> addTags(String account, String containerName, Map<String, String> tags) {
 		Map<String, Object> tagMap = new HashMap<>();
-		Container container = getConnection(account).getContainer(containerName);
-		 if (!container.exists())
-	            container = getConnection(account).getContainer(containerName).create();
+		Container container = getContainer(account, containerName, true);
 		Map<String, String> existingTags = getTags(account, containerName);
 		existingTags.entrySet().forEach(m -> tagMap.put(m.getKey(), m.getValue()));
 		tags.entrySet().stream().forEach(m -> tagMap.put(m.getKey(), m.getValue()));
@@ -181,9 +557,7 @@ public class SwiftAdapter implements ObjectStoreAdapter {
 	@Override
 	public Map<String, String> getTags(String account, String containerName) {
 		Map<String, String> metaData = new HashMap<>();
-		Container container = getConnection(account).getContainer(containerName);
-		 if (!container.exists())
-	            container = getConnection(account).getContainer(containerName).create();
+		Container container = getContainer(account, containerName, true);
 		if (container.getMetadata() != null) {
 			container.getMetadata().entrySet().stream().forEach(m -> metaData.put(m.getKey(), m.getValue().toString()));
 
@@ -193,15 +567,74 @@ public class SwiftAdapter implements ObjectStoreAdapter {
 
 	}
 
+    public List<ObjectDto> getAllObjects(String account, String container) {
+        List<ObjectDto> objectDtos;
+        try (Stream<ObjectDto> objects = streamAllObjects(account, container)) {
+            objectDtos = objects.collect(Collectors.toList());
+        }
+        return objectDtos.isEmpty() ? null : objectDtos;
+    }
+
     /**
-     * Not supported in swift adapter
-     *
-     * @param account
-     * @param container
-     * @return
+     * Lists the container lazily, one page of object.store.swift.list.pagesize objects per request, using the
+     * last name of a page as the marker of the next one.
      */
-    public List<ObjectDto> getAllObjects(String account, String container) {
-        return null;
+    @Override
+    public Stream<ObjectDto> streamAllObjects(String account, String containerName) {
+        Container container = getContainer(account, containerName, false);
+        if (container == null)
+            return Stream.empty();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new ObjectListingIterator(container, null),
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .map(this::toObjectDto)
+                .filter(Objects::nonNull);
+    }
+
+    private ObjectDto toObjectDto(StoredObject storedObject) {
+        String[] keys = storedObject.getName().split("/");
+        switch (keys.length) {
+            case 1:
+                return new ObjectDto(null, null, keys[0], storedObject.getLastModifiedAsDate());
+            case 2:
+                return new ObjectDto(keys[0], null, keys[1], storedObject.getLastModifiedAsDate());
+            case 3:
+                return new ObjectDto(keys[0], keys[1], keys[2], storedObject.getLastModifiedAsDate());
+            default:
+                return null;
+        }
+    }
+
+    private class ObjectListingIterator implements Iterator<StoredObject> {
+
+        private final Container container;
+        private final String prefix;
+        private Iterator<StoredObject> page = Collections.emptyIterator();
+        private String marker = null;
+        private boolean lastPage = false;
+
+        private ObjectListingIterator(Container container, String prefix) {
+            this.container = container;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && !lastPage) {
+                Collection<StoredObject> objects = container.list(prefix, marker, listPageSize);
+                lastPage = objects.size() < listPageSize;
+                page = objects.iterator();
+                for (StoredObject storedObject : objects)
+                    marker = storedObject.getName();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public StoredObject next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return page.next();
+        }
     }
 
 	@Override
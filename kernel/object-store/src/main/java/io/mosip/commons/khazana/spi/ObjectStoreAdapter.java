@@ -1,10 +1,14 @@
 package io.mosip.commons.khazana.spi;
 
 import io.mosip.commons.khazana.dto.ObjectDto;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public interface ObjectStoreAdapter {
 
@@ -14,6 +18,37 @@ public interface ObjectStoreAdapter {
 	public InputStream getObject(String account, String container, String source, String process, String objectName,
 			boolean useAccountAsBucketname);
 
+    /**
+     * Reads length bytes of the object starting at offset. A negative length reads till the end of the object.
+     * <p>
+     * The default implementation reads the object from the start and skips to the offset, adapters that can
+     * read a range from the store override it.
+     */
+    public default InputStream getObjectRange(String account, String container, String source, String process,
+                                              String objectName, long offset, long length) {
+        InputStream data = getObject(account, container, source, process, objectName);
+        if (data == null)
+            return null;
+        try {
+            IOUtils.skip(data, offset);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(data);
+            return null;
+        }
+        return length < 0 ? data : new BoundedInputStream(data, length);
+    }
+
+    /**
+     * Reads the last length bytes of the object.
+     * <p>
+     * The default implementation throws UnsupportedOperationException, as the size of the object is needed to
+     * find where the suffix starts. Adapters that can read a suffix from the store override it.
+     */
+    public default InputStream getObjectSuffix(String account, String container, String source, String process,
+                                               String objectName, long length) {
+        throw new UnsupportedOperationException("Suffix reads are not supported by " + getClass().getName());
+    }
+
     public boolean exists(String account, String container, String source, String process, String objectName);
 
     public boolean putObject(String account, String container, String source, String process, String objectName, InputStream data);
@@ -40,6 +75,18 @@ public interface ObjectStoreAdapter {
 
     public List<ObjectDto> getAllObjects(String account, String container);
 
+    /**
+     * Lazily lists all objects of the container page by page. The stream should be closed when it is not
+     * consumed till the end.
+     * <p>
+     * The default implementation streams the list returned by getAllObjects, adapters that can list page by page
+     * override it.
+     */
+    public default Stream<ObjectDto> streamAllObjects(String account, String container) {
+        List<ObjectDto> objects = getAllObjects(account, container);
+        return objects == null ? Stream.empty() : objects.stream();
+    }
+
 	public Map<String, String> addTags(String account, String container, Map<String, String> tags);
 
 	public Map<String, String> getTags(String account, String container);
@@ -0,0 +1,150 @@
+package io.mosip.commons.khazana.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Read only {@link FileChannel} over a buffer, so that containers decrypted into memory are read by the same
+ * {@link ZipContainer} code as container files. Several channels may share the content, each keeps its own
+ * position.
+ */
+public class BufferFileChannel extends FileChannel {
+
+    private final ByteBuffer content;
+
+    private long position = 0;
+
+    /**
+     * @param content the bytes between position and limit are the content of the channel
+     */
+    public BufferFileChannel(ByteBuffer content) {
+        this.content = content.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, position);
+        if (read > 0)
+            position += read;
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int read = read(dsts[i]);
+            if (read < 0)
+                return total == 0 ? -1 : total;
+            total += read;
+            if (dsts[i].hasRemaining())
+                break;
+        }
+        return total;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        if (position >= content.limit())
+            return -1;
+        int length = (int) Math.min(dst.remaining(), content.limit() - position);
+        ByteBuffer source = content.duplicate();
+        source.position((int) position).limit((int) position + length);
+        dst.put(source);
+        return length;
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ensureOpen();
+        if (position >= content.limit())
+            return 0;
+        ByteBuffer source = content.duplicate();
+        source.position((int) position).limit((int) Math.min(content.limit(), position + count));
+        return target.write(source);
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0)
+            throw new IllegalArgumentException("Negative position : " + newPosition);
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return content.limit();
+    }
+
+    @Override
+    public void force(boolean metaData) {
+        // nothing to write back
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public FileChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) {
+        throw new UnsupportedOperationException("Buffer channels cannot be mapped");
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Buffer channels cannot be locked");
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Buffer channels cannot be locked");
+    }
+
+    @Override
+    protected void implCloseChannel() {
+        // the content is shared and released by the garbage collector
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!isOpen())
+            throw new ClosedChannelException();
+    }
+}
@@ -0,0 +1,145 @@
+package io.mosip.commons.khazana.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Chooses how entries of a posix container are compressed.
+ * <p>
+ * A compression is one of "stored", "deflate", "deflate:&lt;level&gt;" or "auto". Auto samples the first KB of
+ * the entry and stores it when the sample looks already compressed or encrypted, otherwise deflates it.
+ * Overrides are given as comma separated "&lt;source&gt;=&lt;compression&gt;" or
+ * "&lt;source&gt;/&lt;process&gt;=&lt;compression&gt;" pairs and the most specific match wins.
+ */
+public class CompressionPolicy {
+
+    private static final String SEPARATOR = "/";
+    private static final String STORED = "stored";
+    private static final String DEFLATE = "deflate";
+    private static final String AUTO = "auto";
+    private static final int SAMPLE_SIZE = 1024;
+
+    /**
+     * Bits per byte above which a sample is considered incompressible. Random data reaches about 7.8 on a
+     * 1 KB sample, text and structured data stay well below 6.
+     */
+    private static final double ENTROPY_THRESHOLD = 7.2;
+
+    private final Compression defaultCompression;
+
+    private final Map<String, Compression> overrides = new LinkedHashMap<>();
+
+    public CompressionPolicy(String defaultCompression, String overrides) {
+        this.defaultCompression = parse(defaultCompression);
+        if (overrides != null && !overrides.trim().isEmpty()) {
+            for (String override : overrides.split(",")) {
+                String[] keyValue = override.split("=", 2);
+                if (keyValue.length != 2)
+                    throw new IllegalArgumentException("Invalid compression override : " + override);
+                this.overrides.put(keyValue[0].trim() + SEPARATOR, parse(keyValue[1]));
+            }
+        }
+    }
+
+    /**
+     * @param entryName container entry name starting with source and process
+     */
+    public Compression get(String entryName) {
+        Compression compression = defaultCompression;
+        int matched = -1;
+        for (Map.Entry<String, Compression> override : overrides.entrySet()) {
+            if (entryName.startsWith(override.getKey()) && override.getKey().length() > matched) {
+                compression = override.getValue();
+                matched = override.getKey().length();
+            }
+        }
+        return compression;
+    }
+
+    private static Compression parse(String value) {
+        String compression = value.trim().toLowerCase();
+        if (STORED.equals(compression))
+            return new Compression(ZipEntry.STORED, 0, false);
+        if (AUTO.equals(compression))
+            return new Compression(ZipEntry.DEFLATED, Deflater.DEFAULT_COMPRESSION, true);
+        if (DEFLATE.equals(compression))
+            return new Compression(ZipEntry.DEFLATED, Deflater.DEFAULT_COMPRESSION, false);
+        if (compression.startsWith(DEFLATE + ":")) {
+            int level = Integer.parseInt(compression.substring(DEFLATE.length() + 1));
+            if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+                throw new IllegalArgumentException("Invalid deflate level : " + value);
+            return new Compression(ZipEntry.DEFLATED, level, false);
+        }
+        throw new IllegalArgumentException("Invalid compression : " + value);
+    }
+
+    /**
+     * Shannon entropy of the sample in bits per byte.
+     */
+    static double entropy(byte[] sample, int length) {
+        if (length == 0)
+            return 0;
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++)
+            counts[sample[i] & 0xff]++;
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p) / Math.log(2);
+            }
+        }
+        return entropy;
+    }
+
+    public static class Compression {
+
+        private final int method;
+        private final int level;
+        private final boolean auto;
+
+        Compression(int method, int level, boolean auto) {
+            this.method = method;
+            this.level = level;
+            this.auto = auto;
+        }
+
+        public boolean isAuto() {
+            return auto;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * Resolves auto compression from the first bytes of the data. The returned stream still yields all
+         * of the data.
+         */
+        public Compression resolve(PushbackInputStream data) throws IOException {
+            if (!auto)
+                return this;
+            byte[] sample = new byte[SAMPLE_SIZE];
+            int length = 0;
+            int read;
+            while (length < SAMPLE_SIZE && (read = data.read(sample, length, SAMPLE_SIZE - length)) != -1)
+                length += read;
+            data.unread(sample, 0, length);
+            return entropy(sample, length) > ENTROPY_THRESHOLD ? new Compression(ZipEntry.STORED, 0, false)
+                    : new Compression(ZipEntry.DEFLATED, level, false);
+        }
+
+        public static PushbackInputStream sampleable(InputStream data) {
+            return new PushbackInputStream(data, SAMPLE_SIZE);
+        }
+    }
+}
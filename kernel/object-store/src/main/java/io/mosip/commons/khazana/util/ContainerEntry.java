@@ -0,0 +1,67 @@
+package io.mosip.commons.khazana.util;
+
+/**
+ * Location and size of one entry of a posix container, as recorded in its local header or central directory.
+ */
+public class ContainerEntry {
+
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final long dosTime;
+    private final long localHeaderOffset;
+    private volatile long dataOffset;
+
+    public ContainerEntry(String name, int method, long crc, long compressedSize, long size, long dosTime,
+                          long localHeaderOffset, long dataOffset) {
+        this.name = name;
+        this.method = method;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.dosTime = dosTime;
+        this.localHeaderOffset = localHeaderOffset;
+        this.dataOffset = dataOffset;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMethod() {
+        return method;
+    }
+
+    public long getCrc() {
+        return crc;
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getDosTime() {
+        return dosTime;
+    }
+
+    public long getLocalHeaderOffset() {
+        return localHeaderOffset;
+    }
+
+    /**
+     * @return offset of the entry data, or -1 when the local header has not been read yet
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    void setDataOffset(long dataOffset) {
+        this.dataOffset = dataOffset;
+    }
+}
@@ -0,0 +1,160 @@
+package io.mosip.commons.khazana.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel over the data of one container entry.
+ * <p>
+ * Stored entries are served from a region of the container file, so {@link #transferTo(WritableByteChannel)}
+ * hands the copy to the kernel, or from a memory mapped region. Regions of packed containers are decrypted into
+ * memory first and compressed entries are inflated, so both are copied through the heap.
+ */
+public class ContainerEntryChannel implements ReadableByteChannel {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final FileChannel file;
+    private final ByteBuffer mapped;
+    private final ReadableByteChannel inflated;
+    private final long start;
+    private final long size;
+    private final boolean zeroCopy;
+    private long position = 0;
+    private boolean open = true;
+
+    private ContainerEntryChannel(FileChannel file, ByteBuffer mapped, ReadableByteChannel inflated, long start,
+                                  long size) {
+        this.file = file;
+        this.mapped = mapped;
+        this.inflated = inflated;
+        this.start = start;
+        this.size = size;
+        this.zeroCopy = inflated == null && !(file instanceof SegmentedFileChannel)
+                && !(file instanceof BufferFileChannel);
+    }
+
+    /**
+     * Region of the file, closed with this channel.
+     */
+    public static ContainerEntryChannel ofRegion(FileChannel file, long start, long size) {
+        return new ContainerEntryChannel(file, null, null, start, size);
+    }
+
+    /**
+     * Mapped region, which stays valid after the file channel it was mapped from is closed.
+     */
+    public static ContainerEntryChannel ofMapped(MappedByteBuffer buffer) {
+        return new ContainerEntryChannel(null, buffer, null, 0, buffer.capacity());
+    }
+
+    public static ContainerEntryChannel ofStream(InputStream data, long size) {
+        return new ContainerEntryChannel(null, null, Channels.newChannel(data), 0, size);
+    }
+
+    /**
+     * @return uncompressed size of the entry
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true when transferTo does not copy through the heap, i.e. the entry is stored in a container file
+     */
+    public boolean isZeroCopy() {
+        return zeroCopy;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (inflated != null) {
+            int read = inflated.read(dst);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+        if (position >= size)
+            return -1;
+        int length = (int) Math.min(dst.remaining(), size - position);
+        int read;
+        if (mapped != null) {
+            ByteBuffer slice = mapped.duplicate();
+            slice.position((int) position).limit((int) position + length);
+            dst.put(slice);
+            read = length;
+        } else {
+            ByteBuffer limited = dst.duplicate();
+            limited.limit(limited.position() + length);
+            read = file.read(limited, start + position);
+            if (read > 0)
+                dst.position(dst.position() + read);
+        }
+        if (read > 0)
+            position += read;
+        return read;
+    }
+
+    /**
+     * Writes the rest of the entry to the target.
+     *
+     * @return bytes written
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        ensureOpen();
+        long transferred = 0;
+        if (file != null) {
+            while (position < size) {
+                long count = file.transferTo(start + position, size - position, target);
+                if (count <= 0)
+                    break;
+                position += count;
+                transferred += count;
+            }
+        } else if (mapped != null) {
+            ByteBuffer slice = mapped.duplicate();
+            slice.position((int) position);
+            while (slice.hasRemaining())
+                transferred += target.write(slice);
+            position += transferred;
+        } else {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    transferred += target.write(buffer);
+                buffer.clear();
+            }
+        }
+        return transferred;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open)
+            return;
+        open = false;
+        if (file != null)
+            file.close();
+        if (inflated != null)
+            inflated.close();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open)
+            throw new ClosedChannelException();
+    }
+}
@@ -0,0 +1,84 @@
+package io.mosip.commons.khazana.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latest entry by name of a posix container. An entry written again under the same name replaces the
+ * earlier one, whose bytes stay in the file until the container is rewritten.
+ */
+public class ContainerIndex {
+
+    private final Map<String, ContainerEntry> entries = new LinkedHashMap<>();
+
+    /**
+     * End of the last complete entry. New entries are appended here.
+     */
+    private long dataEnd = 0;
+
+    /**
+     * True when the container ends with a central directory.
+     */
+    private boolean sealed = false;
+
+    public ContainerEntry get(String name) {
+        return entries.get(name);
+    }
+
+    public Collection<ContainerEntry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * @return an index with the same entries that can be modified without affecting this one
+     */
+    public ContainerIndex copy() {
+        ContainerIndex copy = new ContainerIndex();
+        copy.entries.putAll(entries);
+        copy.dataEnd = dataEnd;
+        copy.sealed = sealed;
+        return copy;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getDataEnd() {
+        return dataEnd;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Bytes of the data area taken by superseded and deleted entries and by tombstones. Extra fields and data
+     * descriptors of live entries are counted as dead as well.
+     */
+    public long getDeadBytes() {
+        long liveBytes = 0;
+        for (ContainerEntry entry : entries.values())
+            liveBytes += 30 + entry.getName().getBytes(StandardCharsets.UTF_8).length + entry.getCompressedSize();
+        return Math.max(0, dataEnd - liveBytes);
+    }
+
+    void put(ContainerEntry entry) {
+        entries.remove(entry.getName());
+        entries.put(entry.getName(), entry);
+    }
+
+    void remove(String name) {
+        entries.remove(name);
+    }
+
+    void setDataEnd(long dataEnd) {
+        this.dataEnd = dataEnd;
+    }
+
+    void setSealed(boolean sealed) {
+        this.sealed = sealed;
+    }
+}
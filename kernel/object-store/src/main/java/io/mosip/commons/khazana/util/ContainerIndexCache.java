@@ -0,0 +1,64 @@
+package io.mosip.commons.khazana.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of container indexes keyed by container path. An index is only returned while the
+ * modification time and size of the container match the ones it was read at, so changes made by other
+ * processes are picked up on the next lookup.
+ * <p>
+ * Cached indexes are shared between readers and must not be modified; writers update a copy and put it back.
+ */
+public class ContainerIndexCache {
+
+    private final int maxEntries;
+
+    private final LinkedHashMap<String, Snapshot> entries;
+
+    public ContainerIndexCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > ContainerIndexCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cached index, or null when it is missing or the container changed since it was read
+     */
+    public synchronized ContainerIndex get(String path, long lastModified, long size) {
+        Snapshot snapshot = entries.get(path);
+        if (snapshot == null)
+            return null;
+        if (snapshot.lastModified != lastModified || snapshot.size != size) {
+            entries.remove(path);
+            return null;
+        }
+        return snapshot.index;
+    }
+
+    public synchronized void put(String path, long lastModified, long size, ContainerIndex index) {
+        if (maxEntries > 0)
+            entries.put(path, new Snapshot(lastModified, size, index));
+    }
+
+    public synchronized void invalidate(String path) {
+        entries.remove(path);
+    }
+
+    private static class Snapshot {
+
+        private final long lastModified;
+        private final long size;
+        private final ContainerIndex index;
+
+        Snapshot(long lastModified, long size, ContainerIndex index) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.index = index;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
+
 @Component
 public class EncryptionHelper {
 
@@ -26,4 +28,53 @@ public class EncryptionHelper {
             return onlineCryptoUtil.encrypt(id, packet);
     }
 
+    /**
+     * Encrypts the remaining bytes of the packet without copying it to an intermediate array. Nonce, aad and
+     * cipher text are written at the position of the target, so a caller encrypting many packets can keep
+     * reusing the returned buffer.
+     *
+     * @param target buffer to reuse, may be null
+     * @return the target when it had room for the result, otherwise a new buffer of exactly the result size.
+     * The position of the returned buffer is after the result.
+     */
+    public ByteBuffer encrypt(String id, ByteBuffer packet, ByteBuffer target) {
+        return encrypt(id, packet, null, target);
+    }
+
+    /**
+     * Same as {@link #encrypt(String, ByteBuffer, ByteBuffer)} with the given aad instead of a random one, so
+     * callers can bind the cipher text to its context.
+     */
+    public ByteBuffer encrypt(String id, ByteBuffer packet, byte[] aad, ByteBuffer target) {
+        if (cryptoName.equalsIgnoreCase(CRYPTO))
+            return offlineEncryptionUtil.encrypt(id, packet, aad, target);
+        else
+            return onlineCryptoUtil.encrypt(id, packet, aad, target);
+    }
+
+    /**
+     * Decrypts a packet of the nonce + aad + cipher text layout written by {@link #encrypt(String, byte[])}.
+     */
+    public byte[] decrypt(String id, byte[] packet) {
+        if (cryptoName.equalsIgnoreCase(CRYPTO))
+            return offlineEncryptionUtil.decrypt(id, packet);
+        else
+            return onlineCryptoUtil.decrypt(id, packet);
+    }
+
+    /**
+     * Decrypts the remaining nonce + aad + cipher text of the packet and writes the plain text at the position of
+     * the target.
+     *
+     * @param target buffer to reuse, may be null
+     * @return the target when it had room for the result, otherwise a new buffer of exactly the result size.
+     * The position of the returned buffer is after the result.
+     */
+    public ByteBuffer decrypt(String id, ByteBuffer packet, ByteBuffer target) {
+        if (cryptoName.equalsIgnoreCase(CRYPTO))
+            return offlineEncryptionUtil.decrypt(id, packet, target);
+        else
+            return onlineCryptoUtil.decrypt(id, packet, target);
+    }
+
 }
@@ -2,13 +2,112 @@ package io.mosip.commons.khazana.util;
 
 import io.mosip.commons.khazana.constant.KhazanaConstant;
 
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+
 public class EncryptionUtil {
 
-    public static byte[] mergeEncryptedData(byte[] encryptedData, byte[] nonce, byte[] aad) {
-        byte[] finalEncData = new byte[encryptedData.length + KhazanaConstant.GCM_AAD_LENGTH + KhazanaConstant.GCM_NONCE_LENGTH];
-        System.arraycopy(nonce, 0, finalEncData, 0, nonce.length);
-        System.arraycopy(aad, 0, finalEncData, nonce.length, aad.length);
-        System.arraycopy(encryptedData, 0, finalEncData, nonce.length + aad.length,	encryptedData.length);
-        return finalEncData;
+    /**
+     * Length of the nonce and aad in front of the cipher text.
+     */
+    public static final int HEADER_LENGTH = KhazanaConstant.GCM_NONCE_LENGTH + KhazanaConstant.GCM_AAD_LENGTH;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Fills the bytes, a nonce, aad or stream id, from a shared secure random.
+     */
+    public static void randomize(byte[] bytes) {
+        RANDOM.nextBytes(bytes);
+    }
+
+    /**
+     * Base64 encodes the remaining bytes of the buffer, which is consumed, without copying them to an array first.
+     * The url safe alphabet without padding is used, like CryptoUtil.encodeBase64String.
+     */
+    public static String encodeBase64(ByteBuffer data) {
+        ByteBuffer encoded = Base64.getUrlEncoder().withoutPadding().encode(data);
+        return new String(encoded.array(), encoded.arrayOffset(), encoded.remaining(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Base64 encodes the next length bytes of the buffer, which are consumed.
+     */
+    public static String encodeBase64(ByteBuffer data, int length) {
+        ByteBuffer part = data.duplicate();
+        part.limit(part.position() + length);
+        data.position(data.position() + length);
+        return encodeBase64(part);
+    }
+
+    /**
+     * Writes nonce, aad and the decoded cipher text returned by the crypto service at the position of the target.
+     * The cipher text is decoded straight into the target.
+     *
+     * @param encryptedData url safe base64 cipher text
+     * @param target        buffer to reuse, may be null
+     * @return the target when it has room for the result, otherwise a new buffer of exactly the result size.
+     * The position of the returned buffer is after the result.
+     */
+    public static ByteBuffer writeEncryptedData(String encryptedData, byte[] nonce, byte[] aad, ByteBuffer target) {
+        byte[] base64 = encryptedData.getBytes(StandardCharsets.ISO_8859_1);
+        int length = nonce.length + aad.length + decodedLength(base64);
+        ByteBuffer output = target != null && target.remaining() >= length ? target : ByteBuffer.allocate(length);
+        output.put(nonce).put(aad);
+        decodeBase64(base64, output);
+        return output;
+    }
+
+    /**
+     * Writes the decoded plain text returned by the crypto service at the position of the target.
+     *
+     * @param decryptedData url safe base64 plain text
+     * @param target        buffer to reuse, may be null
+     * @return the target when it has room for the result, otherwise a new buffer of exactly the result size.
+     * The position of the returned buffer is after the result.
+     */
+    public static ByteBuffer writeDecryptedData(String decryptedData, ByteBuffer target) {
+        byte[] base64 = decryptedData.getBytes(StandardCharsets.ISO_8859_1);
+        int length = decodedLength(base64);
+        ByteBuffer output = target != null && target.remaining() >= length ? target : ByteBuffer.allocate(length);
+        decodeBase64(base64, output);
+        return output;
+    }
+
+    /**
+     * @return number of bytes the url safe base64 text decodes to, with or without padding
+     */
+    private static int decodedLength(byte[] base64) {
+        int characters = base64.length;
+        while (characters > 0 && base64[characters - 1] == '=')
+            characters--;
+        return characters / 4 * 3 + Math.max(0, characters % 4 - 1);
+    }
+
+    /**
+     * Decodes url safe base64 at the position of the target with the strict decoder of the jdk, so malformed
+     * text fails instead of being skipped.
+     */
+    private static void decodeBase64(byte[] base64, ByteBuffer target) {
+        int length = decodedLength(base64);
+        if (!target.hasArray()) {
+            target.put(Base64.getUrlDecoder().decode(base64));
+            return;
+        }
+        try (InputStream in = Base64.getUrlDecoder().wrap(new ByteArrayInputStream(base64))) {
+            IOUtils.readFully(in, target.array(), target.arrayOffset() + target.position(), length);
+            if (in.read() != -1)
+                throw new IllegalArgumentException("Invalid base64 length");
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid base64 text", e);
+        }
+        target.position(target.position() + length);
     }
 }
@@ -0,0 +1,44 @@
+package io.mosip.commons.khazana.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits background I/O to a number of bytes per second by making callers wait for their share.
+ */
+public class IoThrottle {
+
+    private final long bytesPerSecond;
+
+    private long nextFree = System.nanoTime();
+
+    /**
+     * @param bytesPerSecond allowed rate, 0 or less for no limit
+     */
+    public IoThrottle(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Waits until the bytes may be transferred.
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        if (bytesPerSecond <= 0)
+            return;
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(nextFree, now);
+            nextFree = start + TimeUnit.SECONDS.toNanos(1) * bytes / bytesPerSecond;
+            wait = start - now;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling");
+            }
+        }
+    }
+}
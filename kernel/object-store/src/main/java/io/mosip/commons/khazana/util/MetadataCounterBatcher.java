@@ -0,0 +1,90 @@
+package io.mosip.commons.khazana.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import io.mosip.commons.khazana.constant.KhazanaErrorCodes;
+import io.mosip.commons.khazana.exception.ObjectStoreAdapterException;
+
+/**
+ * Merges concurrent deltas to the same counter into one write. The first caller for a key waits for the batch
+ * window, then applies the sum of all deltas received meanwhile. Every caller of the batch gets the value after
+ * the combined write.
+ */
+public class MetadataCounterBatcher {
+
+    /**
+     * Applies the combined delta and returns the new counter value, or null when the counter does not exist.
+     */
+    public interface DeltaWriter {
+        Integer apply(int delta);
+    }
+
+    private final long windowMillis;
+
+    private final ConcurrentHashMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+    public MetadataCounterBatcher(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public Integer add(String key, int delta, DeltaWriter writer) {
+        while (true) {
+            Batch batch = batches.computeIfAbsent(key, k -> new Batch());
+            boolean leader;
+            synchronized (batch) {
+                if (batch.closed)
+                    continue;
+                leader = batch.callers == 0;
+                batch.callers++;
+                batch.delta += delta;
+            }
+            return leader ? lead(key, batch, writer) : await(batch);
+        }
+    }
+
+    private Integer lead(String key, Batch batch, DeltaWriter writer) {
+        try {
+            Thread.sleep(windowMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int combinedDelta;
+        synchronized (batch) {
+            batch.closed = true;
+            batches.remove(key, batch);
+            combinedDelta = batch.delta;
+        }
+        try {
+            Integer value = writer.apply(combinedDelta);
+            batch.result.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            batch.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Integer await(Batch batch) {
+        try {
+            return batch.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ObjectStoreAdapterException(KhazanaErrorCodes.OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    KhazanaErrorCodes.OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new ObjectStoreAdapterException(KhazanaErrorCodes.OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(),
+                    KhazanaErrorCodes.OBJECT_STORE_NOT_ACCESSIBLE.getErrorMessage(), e.getCause());
+        }
+    }
+
+    private static class Batch {
+        private int callers = 0;
+        private int delta = 0;
+        private boolean closed = false;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+    }
+}
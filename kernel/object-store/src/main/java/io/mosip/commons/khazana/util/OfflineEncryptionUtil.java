@@ -12,7 +12,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
-import java.security.SecureRandom;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -47,21 +47,37 @@ public class OfflineEncryptionUtil {
     private boolean isPrependThumbprintEnabled;
 
     public byte[] encrypt(String id, byte[] packet) {
+        return encrypt(id, ByteBuffer.wrap(packet), null).array();
+    }
+
+    public ByteBuffer encrypt(String id, ByteBuffer packet, ByteBuffer target) {
+        return encrypt(id, packet, null, target);
+    }
+
+    /**
+     * Encrypts the remaining bytes of the packet and writes nonce, aad and cipher text at the position of the
+     * target.
+     *
+     * @param aad    additional authenticated data of {@link KhazanaConstant#GCM_AAD_LENGTH} bytes, random when null
+     * @param target buffer to reuse, may be null
+     * @return the target when it had room for the result, otherwise a new buffer of exactly the result size
+     */
+    public ByteBuffer encrypt(String id, ByteBuffer packet, byte[] aad, ByteBuffer target) {
         String centerId = id.substring(0, centerIdLength);
         String machineId = id.substring(centerIdLength, centerIdLength + machineIdLength);
         String refId = centerId + "_" + machineId;
-        String packetString = CryptoUtil.encodeBase64String(packet);
         CryptomanagerRequestDto cryptomanagerRequestDto = new CryptomanagerRequestDto();
         cryptomanagerRequestDto.setApplicationId(APPLICATION_ID);
-        cryptomanagerRequestDto.setData(packetString);
+        cryptomanagerRequestDto.setData(EncryptionUtil.encodeBase64(packet));
         cryptomanagerRequestDto.setPrependThumbprint(isPrependThumbprintEnabled);
         cryptomanagerRequestDto.setReferenceId(refId);
 
-        SecureRandom sRandom = new SecureRandom();
         byte[] nonce = new byte[KhazanaConstant.GCM_NONCE_LENGTH];
-        byte[] aad = new byte[KhazanaConstant.GCM_AAD_LENGTH];
-        sRandom.nextBytes(nonce);
-        sRandom.nextBytes(aad);
+        if (aad == null) {
+            aad = new byte[KhazanaConstant.GCM_AAD_LENGTH];
+            EncryptionUtil.randomize(aad);
+        }
+        EncryptionUtil.randomize(nonce);
         cryptomanagerRequestDto.setAad(CryptoUtil.encodeBase64String(aad));
         cryptomanagerRequestDto.setSalt(CryptoUtil.encodeBase64String(nonce));
         // setLocal Date Time
@@ -74,8 +90,46 @@ public class OfflineEncryptionUtil {
         } else {
             throw new ObjectStoreAdapterException(KhazanaErrorCodes.ENCRYPTION_FAILURE.getErrorCode(), KhazanaErrorCodes.ENCRYPTION_FAILURE.getErrorMessage());
         }
-        byte[] encryptedData = CryptoUtil.decodeBase64(getCryptomanagerService().encrypt(cryptomanagerRequestDto).getData());
-        return EncryptionUtil.mergeEncryptedData(encryptedData, nonce, aad);
+        String encryptedData = getCryptomanagerService().encrypt(cryptomanagerRequestDto).getData();
+        return EncryptionUtil.writeEncryptedData(encryptedData, nonce, aad, target);
+    }
+
+    public byte[] decrypt(String id, byte[] packet) {
+        return decrypt(id, ByteBuffer.wrap(packet), null).array();
+    }
+
+    /**
+     * Decrypts the remaining nonce + aad + cipher text of the packet and writes the plain text at the position
+     * of the target.
+     *
+     * @param target buffer to reuse, may be null
+     * @return the target when it had room for the result, otherwise a new buffer of exactly the result size
+     */
+    public ByteBuffer decrypt(String id, ByteBuffer packet, ByteBuffer target) {
+        String centerId = id.substring(0, centerIdLength);
+        String machineId = id.substring(centerIdLength, centerIdLength + machineIdLength);
+        String refId = centerId + "_" + machineId;
+        if (packet.remaining() < EncryptionUtil.HEADER_LENGTH)
+            throw new ObjectStoreAdapterException(KhazanaErrorCodes.DECRYPTION_FAILURE.getErrorCode(), KhazanaErrorCodes.DECRYPTION_FAILURE.getErrorMessage());
+        CryptomanagerRequestDto cryptomanagerRequestDto = new CryptomanagerRequestDto();
+        cryptomanagerRequestDto.setApplicationId(APPLICATION_ID);
+        cryptomanagerRequestDto.setReferenceId(refId);
+        cryptomanagerRequestDto.setSalt(EncryptionUtil.encodeBase64(packet, KhazanaConstant.GCM_NONCE_LENGTH));
+        cryptomanagerRequestDto.setAad(EncryptionUtil.encodeBase64(packet, KhazanaConstant.GCM_AAD_LENGTH));
+        cryptomanagerRequestDto.setData(EncryptionUtil.encodeBase64(packet));
+        cryptomanagerRequestDto.setPrependThumbprint(isPrependThumbprintEnabled);
+        // setLocal Date Time
+        if (id.length() > 14) {
+            String packetCreatedDateTime = id.substring(id.length() - 14);
+            String formattedDate = packetCreatedDateTime.substring(0, 8) + "T"
+                    + packetCreatedDateTime.substring(packetCreatedDateTime.length() - 6);
+
+            cryptomanagerRequestDto.setTimeStamp(LocalDateTime.parse(formattedDate, DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss")));
+        } else {
+            throw new ObjectStoreAdapterException(KhazanaErrorCodes.DECRYPTION_FAILURE.getErrorCode(), KhazanaErrorCodes.DECRYPTION_FAILURE.getErrorMessage());
+        }
+        String decryptedData = getCryptomanagerService().decrypt(cryptomanagerRequestDto).getData();
+        return EncryptionUtil.writeDecryptedData(decryptedData, target);
     }
 
     private CryptomanagerService getCryptomanagerService() {
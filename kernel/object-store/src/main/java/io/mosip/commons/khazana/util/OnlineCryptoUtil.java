@@ -1,35 +1,51 @@
 package io.mosip.commons.khazana.util;
 
+import static io.mosip.commons.khazana.config.LoggerConfiguration.REGISTRATIONID;
+import static io.mosip.commons.khazana.config.LoggerConfiguration.SESSIONID;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.mosip.commons.khazana.config.LoggerConfiguration;
 import io.mosip.commons.khazana.constant.KhazanaConstant;
 import io.mosip.commons.khazana.dto.CryptomanagerRequestDto;
 import io.mosip.commons.khazana.dto.CryptomanagerResponseDto;
 import io.mosip.commons.khazana.exception.ObjectStoreAdapterException;
 import io.mosip.kernel.core.exception.ServiceError;
 import io.mosip.kernel.core.http.RequestWrapper;
+import io.mosip.kernel.core.logger.spi.Logger;
 import io.mosip.kernel.core.util.CryptoUtil;
 import io.mosip.kernel.core.util.DateUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
-import java.security.SecureRandom;
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class OnlineCryptoUtil {
 
+    private static final Logger LOGGER = LoggerConfiguration.logConfig(OnlineCryptoUtil.class);
+
     public static final String APPLICATION_ID = "REGISTRATION";
     private static final String DECRYPT_SERVICE_ID = "mosip.cryptomanager.decrypt";
     private static final String IO_EXCEPTION = "Exception while reading packet inputStream";
     private static final String DATE_TIME_EXCEPTION = "Error while parsing packet timestamp";
+    private static final DateTimeFormatter PACKET_DATETIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+    private static final long IDLE_CONNECTION_SECONDS = 60;
 
     @Value("${mosip.utc-datetime-pattern:yyyy-MM-dd'T'HH:mm:ss.SSS'Z'}")
     private String DATETIME_PATTERN;
@@ -52,6 +68,29 @@ public class OnlineCryptoUtil {
     @Value("${crypto.PrependThumbprint.enable:true}")
     private boolean isPrependThumbprintEnabled;
 
+    /**
+     * Call the crypto manager over a dedicated pool of keep-alive connections. When false the shared RestTemplate
+     * bean is used as is.
+     */
+    @Value("${object.store.crypto.client.pooled:true}")
+    private boolean pooled;
+
+    @Value("${object.store.crypto.client.max.connections:20}")
+    private int maxConnections;
+
+    @Value("${object.store.crypto.client.connect.timeout.ms:10000}")
+    private int connectTimeout;
+
+    @Value("${object.store.crypto.client.read.timeout.ms:60000}")
+    private int readTimeout;
+
+    /**
+     * Reuse the interceptors of the shared RestTemplate, usually for authentication. Interceptors read the whole
+     * request body, so bodies are streamed only when this is false or the shared template has none.
+     */
+    @Value("${object.store.crypto.client.interceptors:true}")
+    private boolean copyInterceptors;
+
     @Autowired
     private ObjectMapper mapper;
 
@@ -60,135 +99,197 @@ public class OnlineCryptoUtil {
 
     private RestTemplate restTemplate = null;
 
+    private CloseableHttpClient httpClient = null;
+
+    private DateTimeFormatter requestDateTimeFormat = null;
+
     public byte[] encrypt(String id, byte[] packet) {
-        byte[] encryptedPacket = null;
+        return encrypt(id, ByteBuffer.wrap(packet), null).array();
+    }
+
+    public ByteBuffer encrypt(String id, ByteBuffer packet, ByteBuffer target) {
+        return encrypt(id, packet, null, target);
+    }
+
+    /**
+     * Encrypts the remaining bytes of the packet and writes nonce, aad and cipher text at the position of the
+     * target.
+     *
+     * @param aad    additional authenticated data of {@link KhazanaConstant#GCM_AAD_LENGTH} bytes, random when null
+     * @param target buffer to reuse, may be null
+     * @return the target when it had room for the result, otherwise a new buffer of exactly the result size
+     */
+    public ByteBuffer encrypt(String id, ByteBuffer packet, byte[] aad, ByteBuffer target) {
+        ByteBuffer encryptedPacket = null;
 
         try {
             String centerId = id.substring(0, centerIdLength);
             String machineId = id.substring(centerIdLength, centerIdLength + machineIdLength);
             String refId = centerId + "_" + machineId;
-            String packetString = CryptoUtil.encodeBase64String(packet);
             CryptomanagerRequestDto cryptomanagerRequestDto = new CryptomanagerRequestDto();
-            RequestWrapper<CryptomanagerRequestDto> request = new RequestWrapper<>();
             cryptomanagerRequestDto.setApplicationId(APPLICATION_ID);
-            cryptomanagerRequestDto.setData(packetString);
+            cryptomanagerRequestDto.setData(EncryptionUtil.encodeBase64(packet));
             cryptomanagerRequestDto.setReferenceId(refId);
             cryptomanagerRequestDto.setPrependThumbprint(isPrependThumbprintEnabled);
 
-            SecureRandom sRandom = new SecureRandom();
             byte[] nonce = new byte[KhazanaConstant.GCM_NONCE_LENGTH];
-            byte[] aad = new byte[KhazanaConstant.GCM_AAD_LENGTH];
-            sRandom.nextBytes(nonce);
-            sRandom.nextBytes(aad);
+            if (aad == null) {
+                aad = new byte[KhazanaConstant.GCM_AAD_LENGTH];
+                EncryptionUtil.randomize(aad);
+            }
+            EncryptionUtil.randomize(nonce);
             cryptomanagerRequestDto.setAad(CryptoUtil.encodeBase64String(aad));
             cryptomanagerRequestDto.setSalt(CryptoUtil.encodeBase64String(nonce));
             // setLocal Date Time
             if (id.length() > 14) {
-                String packetCreatedDateTime = id.substring(id.length() - 14);
-                String formattedDate = packetCreatedDateTime.substring(0, 8) + "T"
-                        + packetCreatedDateTime.substring(packetCreatedDateTime.length() - 6);
-
-                cryptomanagerRequestDto.setTimeStamp(
-                        LocalDateTime.parse(formattedDate, DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss")));
+                cryptomanagerRequestDto.setTimeStamp(getPacketTimestamp(id));
             } else {
                 throw new ObjectStoreAdapterException("", "Packet Encryption Failed-Invalid Packet format");
             }
-            request.setId(DECRYPT_SERVICE_ID);
-            request.setMetadata(null);
-            request.setRequest(cryptomanagerRequestDto);
-            DateTimeFormatter format = DateTimeFormatter.ofPattern(DATETIME_PATTERN);
-            LocalDateTime localdatetime = LocalDateTime
-                    .parse(DateUtils.getUTCCurrentDateTimeString(DATETIME_PATTERN), format);
-            request.setRequesttime(localdatetime);
-            request.setVersion(APPLICATION_VERSION);
-            HttpEntity<RequestWrapper<CryptomanagerRequestDto>> httpEntity = new HttpEntity<>(request);
-
-            ResponseEntity<String> response = getRestTemplate().exchange(cryptomanagerEncryptUrl, HttpMethod.POST, httpEntity, String.class);
-            CryptomanagerResponseDto responseObject = mapper.readValue(response.getBody(), CryptomanagerResponseDto.class);
+            CryptomanagerResponseDto responseObject = post(cryptomanagerEncryptUrl, cryptomanagerRequestDto);
             if (responseObject != null &&
                     responseObject.getErrors() != null && !responseObject.getErrors().isEmpty()) {
                 ServiceError error = responseObject.getErrors().get(0);
                 throw new ObjectStoreAdapterException("", error.getMessage());
             }
-            encryptedPacket = responseObject.getResponse().getData().getBytes();
-            byte[] encryptedData = CryptoUtil.decodeBase64(responseObject.getResponse().getData());
-            encryptedPacket = mergeEncryptedData(encryptedData, nonce, aad);
+            encryptedPacket = EncryptionUtil.writeEncryptedData(responseObject.getResponse().getData(), nonce, aad,
+                    target);
         } catch (Exception e) {
             throw new ObjectStoreAdapterException("", IO_EXCEPTION, e);
         }
         return encryptedPacket;
     }
 
-    private byte[] mergeEncryptedData(byte[] encryptedData, byte[] nonce, byte[] aad) {
-        byte[] finalEncData = new byte[encryptedData.length + KhazanaConstant.GCM_AAD_LENGTH + KhazanaConstant.GCM_NONCE_LENGTH];
-        System.arraycopy(nonce, 0, finalEncData, 0, nonce.length);
-        System.arraycopy(aad, 0, finalEncData, nonce.length, aad.length);
-        System.arraycopy(encryptedData, 0, finalEncData, nonce.length + aad.length,	encryptedData.length);
-        return finalEncData;
-    }
-
-    private RestTemplate getRestTemplate() {
-        if (restTemplate == null)
-            restTemplate = applicationContext.getBean(RestTemplate.class);
-        return restTemplate;
+    public byte[] decrypt(String id, byte[] packet) {
+        return decrypt(id, ByteBuffer.wrap(packet), null).array();
     }
 
-
-    public byte[] decrypt(String id, byte[] packet) {
-        byte[] decryptedPacket = null;
+    /**
+     * Decrypts the remaining nonce + aad + cipher text of the packet and writes the plain text at the position
+     * of the target.
+     *
+     * @param target buffer to reuse, may be null
+     * @return the target when it had room for the result, otherwise a new buffer of exactly the result size
+     */
+    public ByteBuffer decrypt(String id, ByteBuffer packet, ByteBuffer target) {
+        ByteBuffer decryptedPacket = null;
 
         try {
             String centerId = id.substring(0, centerIdLength);
             String machineId = id.substring(centerIdLength, centerIdLength + machineIdLength);
             String refId = centerId + "_" + machineId;
             CryptomanagerRequestDto cryptomanagerRequestDto = new CryptomanagerRequestDto();
-            RequestWrapper<CryptomanagerRequestDto> request = new RequestWrapper<>();
             cryptomanagerRequestDto.setApplicationId(APPLICATION_ID);
             cryptomanagerRequestDto.setReferenceId(refId);
-            byte[] nonce = Arrays.copyOfRange(packet, 0, KhazanaConstant.GCM_NONCE_LENGTH);
-            byte[] aad = Arrays.copyOfRange(packet, KhazanaConstant.GCM_NONCE_LENGTH,
-                    KhazanaConstant.GCM_NONCE_LENGTH + KhazanaConstant.GCM_AAD_LENGTH);
-            byte[] encryptedData = Arrays.copyOfRange(packet, KhazanaConstant.GCM_NONCE_LENGTH + KhazanaConstant.GCM_AAD_LENGTH,
-                    packet.length);
-            cryptomanagerRequestDto.setAad(CryptoUtil.encodeBase64String(aad));
-            cryptomanagerRequestDto.setSalt(CryptoUtil.encodeBase64String(nonce));
-            cryptomanagerRequestDto.setData(CryptoUtil.encodeBase64String(encryptedData));
+            if (packet.remaining() < EncryptionUtil.HEADER_LENGTH)
+                throw new ObjectStoreAdapterException("","Packet DecryptionFailed-Invalid Packet format");
+            cryptomanagerRequestDto.setSalt(EncryptionUtil.encodeBase64(packet, KhazanaConstant.GCM_NONCE_LENGTH));
+            cryptomanagerRequestDto.setAad(EncryptionUtil.encodeBase64(packet, KhazanaConstant.GCM_AAD_LENGTH));
+            cryptomanagerRequestDto.setData(EncryptionUtil.encodeBase64(packet));
             cryptomanagerRequestDto.setPrependThumbprint(isPrependThumbprintEnabled);
             // setLocal Date Time
             if (id.length() > 14) {
-                String packetCreatedDateTime = id.substring(id.length() - 14);
-                String formattedDate = packetCreatedDateTime.substring(0, 8) + "T"
-                        + packetCreatedDateTime.substring(packetCreatedDateTime.length() - 6);
-
-                cryptomanagerRequestDto.setTimeStamp(
-                        LocalDateTime.parse(formattedDate, DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss")));
+                cryptomanagerRequestDto.setTimeStamp(getPacketTimestamp(id));
             } else {
                 throw new ObjectStoreAdapterException("","Packet DecryptionFailed-Invalid Packet format");
             }
-            request.setId(DECRYPT_SERVICE_ID);
-            request.setMetadata(null);
-            request.setRequest(cryptomanagerRequestDto);
-            DateTimeFormatter format = DateTimeFormatter.ofPattern(DATETIME_PATTERN);
-            LocalDateTime localdatetime = LocalDateTime
-                    .parse(DateUtils.getUTCCurrentDateTimeString(DATETIME_PATTERN), format);
-            request.setRequesttime(localdatetime);
-            request.setVersion(APPLICATION_VERSION);
-            HttpEntity<RequestWrapper<CryptomanagerRequestDto>> httpEntity = new HttpEntity<>(request);
-
-            ResponseEntity<String> response = restTemplate.exchange(cryptomanagerDecryptUrl, HttpMethod.POST, httpEntity, String.class);
-
-            CryptomanagerResponseDto responseObject = mapper.readValue(response.getBody(), CryptomanagerResponseDto.class);
+            CryptomanagerResponseDto responseObject = post(cryptomanagerDecryptUrl, cryptomanagerRequestDto);
 
             if (responseObject != null &&
                     responseObject.getErrors() != null && !responseObject.getErrors().isEmpty()) {
                 ServiceError error = responseObject.getErrors().get(0);
                 throw new ObjectStoreAdapterException("",error.getMessage());
             }
-            decryptedPacket = CryptoUtil.decodeBase64(responseObject.getResponse().getData());
+            decryptedPacket = EncryptionUtil.writeDecryptedData(responseObject.getResponse().getData(), target);
 
         } catch (Exception e) {
             throw new ObjectStoreAdapterException("", "",e);
         }
         return decryptedPacket;
     }
+
+    /**
+     * Posts the request and parses the response straight from the connection, without holding the base64 body
+     * as a String.
+     */
+    private CryptomanagerResponseDto post(String url, CryptomanagerRequestDto cryptomanagerRequestDto) {
+        RequestWrapper<CryptomanagerRequestDto> request = new RequestWrapper<>();
+        request.setId(DECRYPT_SERVICE_ID);
+        request.setMetadata(null);
+        request.setRequest(cryptomanagerRequestDto);
+        LocalDateTime localdatetime = LocalDateTime
+                .parse(DateUtils.getUTCCurrentDateTimeString(DATETIME_PATTERN), getRequestDateTimeFormat());
+        request.setRequesttime(localdatetime);
+        request.setVersion(APPLICATION_VERSION);
+        HttpEntity<RequestWrapper<CryptomanagerRequestDto>> httpEntity = new HttpEntity<>(request);
+
+        RestTemplate template = getRestTemplate();
+        return template.execute(url, HttpMethod.POST,
+                template.httpEntityCallback(httpEntity, CryptomanagerResponseDto.class),
+                response -> mapper.readValue(response.getBody(), CryptomanagerResponseDto.class));
+    }
+
+    private LocalDateTime getPacketTimestamp(String id) {
+        String packetCreatedDateTime = id.substring(id.length() - 14);
+        String formattedDate = packetCreatedDateTime.substring(0, 8) + "T"
+                + packetCreatedDateTime.substring(packetCreatedDateTime.length() - 6);
+        return LocalDateTime.parse(formattedDate, PACKET_DATETIME_FORMAT);
+    }
+
+    private synchronized DateTimeFormatter getRequestDateTimeFormat() {
+        if (requestDateTimeFormat == null)
+            requestDateTimeFormat = DateTimeFormatter.ofPattern(DATETIME_PATTERN);
+        return requestDateTimeFormat;
+    }
+
+    private synchronized RestTemplate getRestTemplate() {
+        if (restTemplate == null) {
+            RestTemplate shared = applicationContext.getBean(RestTemplate.class);
+            restTemplate = pooled ? newPooledRestTemplate(shared) : shared;
+        }
+        return restTemplate;
+    }
+
+    /**
+     * Rest template on a dedicated pool of keep-alive connections with connect and read timeouts. The message
+     * converters and error handler of the shared template are reused, and its interceptors unless
+     * object.store.crypto.client.interceptors is false.
+     * <p>
+     * Request bodies are streamed to the connection only without interceptors. With interceptors, RestTemplate
+     * wraps the request factory in an InterceptingClientHttpRequestFactory, which buffers the whole body so the
+     * interceptors can read it.
+     */
+    private RestTemplate newPooledRestTemplate(RestTemplate shared) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(Math.max(1, maxConnections));
+        connectionManager.setDefaultMaxPerRoute(Math.max(1, maxConnections));
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS)
+                .build();
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        // streams the base64 packet to the connection, see above about interceptors
+        requestFactory.setBufferRequestBody(false);
+        RestTemplate template = new RestTemplate(requestFactory);
+        template.setMessageConverters(shared.getMessageConverters());
+        if (copyInterceptors && !shared.getInterceptors().isEmpty()) {
+            template.setInterceptors(shared.getInterceptors());
+            LOGGER.info(SESSIONID, REGISTRATIONID, "OnlineCryptoUtil", "Crypto client request bodies are buffered for "
+                    + shared.getInterceptors().size() + " interceptors of the shared RestTemplate");
+        }
+        template.setErrorHandler(shared.getErrorHandler());
+        return template;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        IOUtils.closeQuietly(httpClient);
+    }
 }
@@ -0,0 +1,334 @@
+package io.mosip.commons.khazana.util;
+
+import io.mosip.commons.khazana.constant.KhazanaConstant;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Authenticated envelope that encrypts data of any size in fixed-size segments, so packing runs in constant memory
+ * and reads decrypt only the segments they cover.
+ * <p>
+ * The envelope starts with the magic "KZSE", a version byte, the 4 byte plain segment size and a random 16 byte
+ * stream id. Each segment follows as a 4 byte length and the nonce + aad + cipher text of the segment, the same
+ * layout a whole packet had before. The aad of every segment carries the stream id, the segment index and a
+ * last segment flag, so reordered, dropped, truncated or spliced segments are rejected.
+ * <p>
+ * Data not starting with the header is read as the legacy layout, a single nonce + aad + cipher text.
+ */
+public class SegmentedEnvelope {
+
+    public static final byte VERSION = 1;
+
+    private static final byte[] MAGIC = {'K', 'Z', 'S', 'E'};
+    private static final int STREAM_ID_LENGTH = 16;
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + STREAM_ID_LENGTH;
+    private static final byte LAST = 1;
+
+    /**
+     * Upper bound of the crypto overhead of one segment, key material and tag, used to reject corrupt lengths.
+     */
+    private static final int MAX_OVERHEAD = 65536;
+
+    /**
+     * Encrypts one segment.
+     */
+    public interface SegmentEncryptor {
+
+        /**
+         * Encrypts the remaining bytes of the segment with the given aad and writes nonce + aad + cipher text at
+         * the position of the target.
+         *
+         * @param target buffer to reuse, may be null
+         * @return the target, or a new buffer when the target had no room
+         */
+        ByteBuffer encrypt(ByteBuffer segment, byte[] aad, ByteBuffer target) throws IOException;
+    }
+
+    /**
+     * Decrypts one segment, or a whole packet of the legacy layout.
+     */
+    public interface SegmentDecryptor {
+
+        /**
+         * Decrypts the remaining nonce + aad + cipher text and writes the plain text at the position of the target.
+         *
+         * @param target buffer to reuse, may be null
+         * @return the target, or a new buffer when the target had no room
+         */
+        ByteBuffer decrypt(ByteBuffer envelope, ByteBuffer target) throws IOException;
+    }
+
+    /**
+     * Encrypts the input to the output. Segments are encrypted on the executor, up to inFlight at a time, while
+     * the next segments are read and finished ones are written in order. Memory use is bounded by about
+     * inFlight + 1 plain and encrypted segments whatever the input size.
+     *
+     * @param executor runs the segment encryption, null to encrypt on the calling thread
+     * @return number of segments written
+     */
+    public static long encrypt(InputStream in, OutputStream out, int segmentSize, SegmentEncryptor encryptor,
+                               Executor executor, int inFlight) throws IOException {
+        if (segmentSize <= 0)
+            throw new IllegalArgumentException("Invalid segment size : " + segmentSize);
+        byte[] streamId = new byte[STREAM_ID_LENGTH];
+        EncryptionUtil.randomize(streamId);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.write(MAGIC);
+        dataOut.writeByte(VERSION);
+        dataOut.writeInt(segmentSize);
+        dataOut.write(streamId);
+        WritableByteChannel outChannel = Channels.newChannel(dataOut);
+
+        // plain and encrypted buffer pairs, reused once their segment is written
+        Deque<ByteBuffer[]> free = new ArrayDeque<>();
+        Deque<Segment> pending = new ArrayDeque<>();
+        long index = 0;
+        try {
+            ByteBuffer[] current = take(free, segmentSize);
+            fill(in, current[0]);
+            while (true) {
+                ByteBuffer[] next = take(free, segmentSize);
+                fill(in, next[0]);
+                boolean last = next[0].position() == 0;
+                pending.add(submit(encryptor, executor, current, aad(streamId, index++, last)));
+                if (last) {
+                    free.push(next);
+                    break;
+                }
+                current = next;
+                while (pending.size() >= Math.max(1, inFlight))
+                    write(pending.poll(), outChannel, free);
+            }
+            while (!pending.isEmpty())
+                write(pending.poll(), outChannel, free);
+        } finally {
+            for (Segment segment : pending)
+                segment.task.cancel(true);
+        }
+        dataOut.flush();
+        return index;
+    }
+
+    private static boolean isSegmented(byte[] header, int length) {
+        return length == HEADER_LENGTH && Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)
+                && header[MAGIC.length] == VERSION;
+    }
+
+    /**
+     * Reads the segment table of a segmented envelope by following the segment lengths, without decrypting.
+     *
+     * @return the table, or null when the channel holds a legacy envelope
+     */
+    public static SegmentTable readSegmentTable(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        if (!isSegmented(header.array(), readFully(channel, header, 0)))
+            return null;
+        header.position(MAGIC.length + 1);
+        int segmentSize = header.getInt();
+        byte[] streamId = new byte[STREAM_ID_LENGTH];
+        header.get(streamId);
+        if (segmentSize <= 0)
+            throw new IOException("Invalid segment size " + segmentSize + " in envelope");
+
+        long size = channel.size();
+        long[] positions = new long[16];
+        int[] lengths = new int[16];
+        int count = 0;
+        ByteBuffer length = ByteBuffer.allocate(4);
+        long position = HEADER_LENGTH;
+        while (position < size) {
+            length.clear();
+            if (readFully(channel, length, position) < 4)
+                throw new IOException("Envelope truncated before segment " + count);
+            int segmentLength = length.getInt(0);
+            if (segmentLength < EncryptionUtil.HEADER_LENGTH || segmentLength > segmentSize + MAX_OVERHEAD)
+                throw new IOException("Invalid length " + segmentLength + " of segment " + count);
+            if (position + 4 + segmentLength > size)
+                throw new IOException("Envelope truncated in segment " + count);
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            positions[count] = position + 4;
+            lengths[count++] = segmentLength;
+            position += 4 + segmentLength;
+        }
+        if (count == 0)
+            throw new IOException("Envelope truncated before segment 0");
+        return new SegmentTable(segmentSize, streamId, Arrays.copyOf(positions, count), Arrays.copyOf(lengths, count));
+    }
+
+    /**
+     * @return bytes read into the buffer, less than its remaining bytes only at the end of the channel
+     */
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        int read;
+        while (buffer.hasRemaining() && (read = channel.read(buffer, position + total)) > 0)
+            total += read;
+        return total;
+    }
+
+    /**
+     * Checks the stream id and index in the aad of the segment.
+     *
+     * @return whether the segment is flagged as the last one
+     */
+    private static boolean checkSegment(ByteBuffer envelope, byte[] streamId, long index) throws IOException {
+        // the aad is authenticated by the decryption, checking it first only avoids a call for bad segments
+        ByteBuffer aad = ByteBuffer.wrap(envelope.array(), envelope.arrayOffset() + envelope.position()
+                + KhazanaConstant.GCM_NONCE_LENGTH, KhazanaConstant.GCM_AAD_LENGTH);
+        byte[] segmentStreamId = new byte[STREAM_ID_LENGTH];
+        aad.get(segmentStreamId);
+        if (!Arrays.equals(segmentStreamId, streamId) || aad.getLong() != index)
+            throw new IOException("Unexpected segment " + index + " in envelope");
+        return aad.get() == LAST;
+    }
+
+    private static byte[] aad(byte[] streamId, long index, boolean last) {
+        ByteBuffer aad = ByteBuffer.allocate(KhazanaConstant.GCM_AAD_LENGTH);
+        aad.put(streamId).putLong(index).put(last ? LAST : 0);
+        return aad.array();
+    }
+
+    private static ByteBuffer[] take(Deque<ByteBuffer[]> free, int segmentSize) {
+        ByteBuffer[] buffers = free.poll();
+        if (buffers == null)
+            return new ByteBuffer[]{ByteBuffer.allocate(segmentSize), null};
+        buffers[0].clear();
+        if (buffers[1] != null)
+            buffers[1].clear();
+        return buffers;
+    }
+
+    private static void fill(InputStream in, ByteBuffer buffer) throws IOException {
+        byte[] array = buffer.array();
+        int read;
+        while (buffer.hasRemaining()
+                && (read = in.read(array, buffer.arrayOffset() + buffer.position(), buffer.remaining())) != -1)
+            buffer.position(buffer.position() + read);
+    }
+
+    private static Segment submit(SegmentEncryptor encryptor, Executor executor, ByteBuffer[] buffers, byte[] aad) {
+        buffers[0].flip();
+        FutureTask<ByteBuffer> task = new FutureTask<>(() -> encryptor.encrypt(buffers[0], aad, buffers[1]));
+        if (executor == null)
+            task.run();
+        else
+            executor.execute(task);
+        return new Segment(task, buffers);
+    }
+
+    private static void write(Segment segment, WritableByteChannel out, Deque<ByteBuffer[]> free) throws IOException {
+        ByteBuffer encrypted;
+        try {
+            encrypted = segment.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encrypting");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        encrypted.flip();
+        ByteBuffer length = ByteBuffer.allocate(4).putInt(0, encrypted.remaining());
+        while (length.hasRemaining())
+            out.write(length);
+        while (encrypted.hasRemaining())
+            out.write(encrypted);
+        segment.buffers[1] = encrypted;
+        free.push(segment.buffers);
+    }
+
+    private static class Segment {
+
+        private final FutureTask<ByteBuffer> task;
+        private final ByteBuffer[] buffers;
+
+        Segment(FutureTask<ByteBuffer> task, ByteBuffer[] buffers) {
+            this.task = task;
+            this.buffers = buffers;
+        }
+    }
+
+    /**
+     * Position and length of every segment of a segmented envelope, so single segments can be decrypted without
+     * reading the ones before. Every segment but the last holds exactly segment size plain bytes.
+     */
+    public static class SegmentTable {
+
+        private final int segmentSize;
+        private final byte[] streamId;
+        private final long[] positions;
+        private final int[] lengths;
+
+        private SegmentTable(int segmentSize, byte[] streamId, long[] positions, int[] lengths) {
+            this.segmentSize = segmentSize;
+            this.streamId = streamId;
+            this.positions = positions;
+            this.lengths = lengths;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public int getSegmentCount() {
+            return positions.length;
+        }
+
+        /**
+         * Reads and decrypts one segment. The segment must carry its index, and the last flag exactly when it
+         * is the last segment of the table, so a truncated envelope is rejected.
+         *
+         * @return the plain text, between position and limit
+         */
+        public ByteBuffer decryptSegment(FileChannel channel, int index, SegmentDecryptor decryptor)
+                throws IOException {
+            ByteBuffer envelope = ByteBuffer.allocate(lengths[index]);
+            if (readFully(channel, envelope, positions[index]) < lengths[index])
+                throw new IOException("Envelope truncated in segment " + index);
+            envelope.flip();
+            boolean last = index == positions.length - 1;
+            if (checkSegment(envelope, streamId, index) != last)
+                throw new IOException(last ? "Envelope truncated after segment " + index
+                        : "Unexpected last segment " + index + " in envelope");
+            ByteBuffer plain = decryptor.decrypt(envelope, null);
+            plain.flip();
+            if (last ? plain.remaining() > segmentSize : plain.remaining() != segmentSize)
+                throw new IOException("Invalid plain length " + plain.remaining() + " of segment " + index);
+            return plain;
+        }
+
+        /**
+         * Opens the plain text of the envelope as a read only channel. The size of the plain text is taken from
+         * the last segment, which is read first.
+         *
+         * @param channel the envelope, closed with the returned channel
+         * @param reader  supplies the plain text of a segment, e.g. by {@link #decryptSegment}
+         */
+        public SegmentedFileChannel open(FileChannel channel, SegmentedFileChannel.SegmentReader reader)
+                throws IOException {
+            int last = positions.length - 1;
+            long size = (long) last * segmentSize + reader.read(last).remaining();
+            return new SegmentedFileChannel(channel, reader, segmentSize, size);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.mosip.commons.khazana.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Read only {@link FileChannel} over the plain text of a segmented envelope, so that packed containers are read by
+ * the same {@link ZipContainer} code as container files. Only the segments covering a read are decrypted, by the
+ * {@link SegmentReader}, and the last one is kept for the next read.
+ */
+public class SegmentedFileChannel extends FileChannel {
+
+    /**
+     * Supplies the plain text of a segment.
+     */
+    public interface SegmentReader {
+
+        /**
+         * @return the plain text of the segment between position and limit, not modified by the caller
+         */
+        ByteBuffer read(int index) throws IOException;
+    }
+
+    private final FileChannel file;
+
+    private final SegmentReader reader;
+
+    private final int segmentSize;
+
+    private final long size;
+
+    private int segmentIndex = -1;
+
+    private ByteBuffer segment;
+
+    private long position = 0;
+
+    /**
+     * @param file the envelope, closed with this channel
+     * @param size size of the plain text
+     */
+    public SegmentedFileChannel(FileChannel file, SegmentReader reader, int segmentSize, long size) {
+        this.file = file;
+        this.reader = reader;
+        this.segmentSize = segmentSize;
+        this.size = size;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, position);
+        if (read > 0)
+            position += read;
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int read = read(dsts[i]);
+            if (read < 0)
+                return total == 0 ? -1 : total;
+            total += read;
+            if (dsts[i].hasRemaining())
+                break;
+        }
+        return total;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        if (position >= size)
+            return -1;
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            ByteBuffer source = segment(position);
+            if (source.remaining() > dst.remaining())
+                source.limit(source.position() + dst.remaining());
+            total += source.remaining();
+            position += source.remaining();
+            dst.put(source);
+        }
+        return total;
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ensureOpen();
+        if (position >= size)
+            return 0;
+        ByteBuffer source = segment(position);
+        if (source.remaining() > count)
+            source.limit(source.position() + (int) count);
+        return target.write(source);
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0)
+            throw new IllegalArgumentException("Negative position : " + newPosition);
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public void force(boolean metaData) {
+        // nothing to write back
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public FileChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) {
+        throw new UnsupportedOperationException("Segmented channels cannot be mapped");
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Segmented channels cannot be locked");
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("Segmented channels cannot be locked");
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        segment = null;
+        file.close();
+    }
+
+    /**
+     * @return view of the segment holding the position, from the position to the end of the segment
+     */
+    private ByteBuffer segment(long position) throws IOException {
+        int index = (int) (position / segmentSize);
+        if (index != segmentIndex) {
+            segment = reader.read(index);
+            segmentIndex = index;
+        }
+        ByteBuffer view = segment.duplicate();
+        int offset = (int) (position - (long) index * segmentSize);
+        if (offset >= view.remaining())
+            throw new IOException("Segment " + index + " shorter than expected");
+        view.position(view.position() + offset);
+        return view;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!isOpen())
+            throw new ClosedChannelException();
+    }
+}
@@ -0,0 +1,104 @@
+package io.mosip.commons.khazana.util;
+
+import static io.mosip.commons.khazana.config.LoggerConfiguration.REGISTRATIONID;
+import static io.mosip.commons.khazana.config.LoggerConfiguration.SESSIONID;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+import io.mosip.commons.khazana.config.LoggerConfiguration;
+import io.mosip.kernel.core.exception.ExceptionUtils;
+import io.mosip.kernel.core.logger.spi.Logger;
+
+/**
+ * InputStream backed by the live http connection of an {@link S3Object}.
+ * Closing the stream releases the connection back to the pool. If the stream is closed
+ * before it is fully read the connection is aborted instead of drained.
+ * Streams which become unreachable without being closed are reported and released by a
+ * {@link Cleaner}.
+ */
+public class StreamingObjectInputStream extends FilterInputStream {
+
+    private static final Logger LOGGER = LoggerConfiguration.logConfig(StreamingObjectInputStream.class);
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ConnectionState state;
+
+    private final Cleaner.Cleanable cleanable;
+
+    private boolean eof = false;
+
+    public StreamingObjectInputStream(S3Object s3Object, String objectName) {
+        super(s3Object.getObjectContent());
+        this.state = new ConnectionState(s3Object, objectName);
+        this.cleanable = CLEANER.register(this, state);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1)
+            eof = true;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n == -1)
+            eof = true;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!state.closed.compareAndSet(false, true))
+            return;
+        try {
+            // avoid draining the remaining bytes of a large object just to reuse the connection
+            if (!eof)
+                ((S3ObjectInputStream) in).abort();
+            state.s3Object.close();
+        } finally {
+            cleanable.clean();
+        }
+    }
+
+    /**
+     * State shared with the cleaner. Must not refer back to the stream itself.
+     */
+    private static class ConnectionState implements Runnable {
+
+        private final S3Object s3Object;
+
+        private final String objectName;
+
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private ConnectionState(S3Object s3Object, String objectName) {
+            this.s3Object = s3Object;
+            this.objectName = objectName;
+        }
+
+        @Override
+        public void run() {
+            if (!closed.compareAndSet(false, true))
+                return;
+            LOGGER.warn(SESSIONID, REGISTRATIONID, objectName,
+                    "Object stream was not closed by the caller. Releasing the leaked connection.");
+            try {
+                s3Object.getObjectContent().abort();
+                s3Object.close();
+            } catch (Exception e) {
+                LOGGER.error(SESSIONID, REGISTRATIONID, "Exception occured while releasing connection for : " + objectName,
+                        ExceptionUtils.getStackTrace(e));
+            }
+        }
+    }
+}
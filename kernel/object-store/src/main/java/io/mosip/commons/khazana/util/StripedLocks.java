@@ -0,0 +1,25 @@
+package io.mosip.commons.khazana.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of reentrant locks selected by key hash. Keys mapping to the same stripe share a lock,
+ * different stripes proceed in parallel.
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    public StripedLocks(int stripes) {
+        locks = new ReentrantLock[Math.max(1, stripes)];
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new ReentrantLock();
+    }
+
+    public ReentrantLock get(String key) {
+        int hash = key.hashCode();
+        // spread the hash so that similar keys do not collide on the same stripe
+        hash ^= (hash >>> 16);
+        return locks[Math.floorMod(hash, locks.length)];
+    }
+}
@@ -0,0 +1,112 @@
+package io.mosip.commons.khazana.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import io.mosip.commons.khazana.dto.CacheStatsDto;
+
+/**
+ * LRU cache bounded by the total weight of its entries, with a time to live per entry.
+ * All operations are synchronized; loading happens outside the lock.
+ */
+public class WeightedLruCache<V> {
+
+    private final long maxWeight;
+
+    private final long ttlMillis;
+
+    private final ToLongFunction<V> weigher;
+
+    private final LinkedHashMap<String, CacheEntry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public WeightedLruCache(long maxWeight, long ttlMillis, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return the cached entry, or null on a miss. A cached null value is returned as an entry holding null.
+     */
+    public synchronized CacheEntry<V> get(String key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return entry;
+    }
+
+    public synchronized void put(String key, V value) {
+        long entryWeight = key.length() * 2L + (value == null ? 0 : weigher.applyAsLong(value));
+        if (entryWeight > maxWeight)
+            return;
+        remove(key);
+        entries.put(key, new CacheEntry<>(value, entryWeight, System.currentTimeMillis() + ttlMillis));
+        weight += entryWeight;
+        Iterator<CacheEntry<V>> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidate(String key) {
+        remove(key);
+    }
+
+    public synchronized void invalidateIf(Predicate<String> keyPredicate) {
+        Iterator<Map.Entry<String, CacheEntry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CacheEntry<V>> entry = iterator.next();
+            if (keyPredicate.test(entry.getKey())) {
+                weight -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized CacheStatsDto getStats() {
+        return new CacheStatsDto(hits.get(), misses.get(), evictions.get(), entries.size(), weight);
+    }
+
+    private void remove(String key) {
+        CacheEntry<V> removed = entries.remove(key);
+        if (removed != null)
+            weight -= removed.weight;
+    }
+
+    public static class CacheEntry<V> {
+
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        private CacheEntry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        public V getValue() {
+            return value;
+        }
+    }
+}
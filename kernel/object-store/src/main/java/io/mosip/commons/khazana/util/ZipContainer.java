@@ -0,0 +1,527 @@
+package io.mosip.commons.khazana.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Append-only zip layout for posix containers.
+ * <p>
+ * Entries are appended as local header followed by data, with sizes and crc in the local header. The local
+ * header signature is written last, so an entry torn by a crash is ignored by the reader and overwritten by
+ * the next append. The central directory is written only when the container is sealed, which makes it a
+ * regular zip. Appending to a sealed container drops its central directory until it is sealed again.
+ * <p>
+ * An entry is deleted by appending a tombstone under its name, an empty entry marked by a private extra
+ * field. The reader drops the entry and the tombstone, so neither appears in the central directory at seal.
+ * <p>
+ * The reader accepts sealed containers, zips written by ZipOutputStream and open containers. Zip64 is not
+ * supported.
+ */
+public class ZipContainer {
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int EXT_SIG = 0x08074b50;
+    private static final int LOC_HEADER = 30;
+    private static final int CEN_HEADER = 46;
+    private static final int END_HEADER = 22;
+    private static final int VERSION = 20;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    private static final int FLAG_UTF8 = 0x800;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int COPY_CHUNK_SIZE = 65536;
+    private static final short TOMBSTONE_ID = 0x4b5a;
+    private static final byte[] NO_EXTRA = new byte[0];
+    private static final byte[] TOMBSTONE_EXTRA = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN)
+            .putShort(TOMBSTONE_ID).putShort((short) 0).array();
+
+    private ZipContainer() {
+    }
+
+    /**
+     * @return false when the file does not start like a container, e.g. because it was packed and encrypted
+     */
+    public static boolean isContainer(FileChannel channel) throws IOException {
+        if (channel.size() < 4)
+            return true;
+        int signature = read(channel, 0, 4).getInt(0);
+        // a zero signature is a first entry still being written
+        return signature == LOC_SIG || signature == 0;
+    }
+
+    public static ContainerIndex readIndex(FileChannel channel) throws IOException {
+        // containers have no comment, so the end header is looked for at the very end before searching the tail
+        ContainerIndex index = readCentralDirectory(channel, END_HEADER);
+        if (index == null)
+            index = readCentralDirectory(channel, END_HEADER + 0xFFFF);
+        return index != null ? index : scanLocalHeaders(channel);
+    }
+
+    /**
+     * Appends the entry at the end of the last complete entry and adds it to the index.
+     *
+     * @param method ZipEntry.STORED or ZipEntry.DEFLATED
+     * @param level  deflate level, ignored for stored entries
+     */
+    public static ContainerEntry appendEntry(FileChannel channel, ContainerIndex index, String name, InputStream data,
+                                             int method, int level) throws IOException {
+        return appendEntry(channel, index, name, data, method, level, javaToDosTime(System.currentTimeMillis()));
+    }
+
+    /**
+     * Appends the entry with the given modification time, used when entries are copied to a new container.
+     */
+    public static ContainerEntry appendEntry(FileChannel channel, ContainerIndex index, String name, InputStream data,
+                                             int method, int level, long dosTime) throws IOException {
+        long start = index.getDataEnd();
+        // drops the central directory of a sealed container and any torn entry
+        if (channel.size() > start)
+            channel.truncate(start);
+        index.setSealed(false);
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long dataOffset = start + LOC_HEADER + nameBytes.length;
+        writeFully(channel, localHeader(0, method, dosTime, 0, 0, 0, nameBytes, NO_EXTRA), start);
+
+        CRC32 crc = new CRC32();
+        long size = 0;
+        long position = dataOffset;
+        byte[] input = new byte[BUFFER_SIZE];
+        if (method == ZipEntry.STORED) {
+            int read;
+            while ((read = data.read(input)) != -1) {
+                crc.update(input, 0, read);
+                size += read;
+                position += writeFully(channel, ByteBuffer.wrap(input, 0, read), position);
+            }
+        } else {
+            Deflater deflater = new Deflater(level, true);
+            byte[] output = new byte[BUFFER_SIZE];
+            try {
+                int read;
+                while ((read = data.read(input)) != -1) {
+                    crc.update(input, 0, read);
+                    size += read;
+                    deflater.setInput(input, 0, read);
+                    while (!deflater.needsInput())
+                        position = deflate(channel, deflater, output, position);
+                }
+                deflater.finish();
+                while (!deflater.finished())
+                    position = deflate(channel, deflater, output, position);
+            } finally {
+                deflater.end();
+            }
+        }
+        long compressedSize = position - dataOffset;
+        if (size > MAX_SIZE || compressedSize > MAX_SIZE)
+            throw new IOException("Entry " + name + " is too large for the container");
+
+        // patch sizes first and the signature last so that a torn entry is never read as complete
+        ByteBuffer header = localHeader(0, method, dosTime, crc.getValue(), compressedSize, size, nameBytes, NO_EXTRA);
+        writeFully(channel, header, start);
+        writeSignature(channel, start);
+
+        ContainerEntry entry = new ContainerEntry(name, method, crc.getValue(), compressedSize, size, dosTime,
+                start, dataOffset);
+        index.put(entry);
+        index.setDataEnd(position);
+        return entry;
+    }
+
+    /**
+     * Appends a tombstone for the entry and removes the entry from the index.
+     */
+    public static void appendTombstone(FileChannel channel, ContainerIndex index, String name) throws IOException {
+        long start = index.getDataEnd();
+        if (channel.size() > start)
+            channel.truncate(start);
+        index.setSealed(false);
+
+        ByteBuffer header = localHeader(0, ZipEntry.STORED, javaToDosTime(System.currentTimeMillis()), 0, 0, 0,
+                name.getBytes(StandardCharsets.UTF_8), TOMBSTONE_EXTRA);
+        long end = start + writeFully(channel, header, start);
+        writeSignature(channel, start);
+        index.remove(name);
+        index.setDataEnd(end);
+    }
+
+    /**
+     * Copies the compressed data of an entry to the end of another container without inflating it.
+     *
+     * @param throttle limits the copy rate, may be null
+     */
+    public static ContainerEntry copyEntry(FileChannel source, ContainerEntry entry, FileChannel target,
+                                           ContainerIndex targetIndex, IoThrottle throttle) throws IOException {
+        long sourceOffset = resolveDataOffset(source, entry);
+        long start = targetIndex.getDataEnd();
+        byte[] nameBytes = entry.getName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = localHeader(LOC_SIG, entry.getMethod(), entry.getDosTime(), entry.getCrc(),
+                entry.getCompressedSize(), entry.getSize(), nameBytes, NO_EXTRA);
+        long dataOffset = start + writeFully(target, header, start);
+        long copied = 0;
+        while (copied < entry.getCompressedSize()) {
+            long chunk = Math.min(COPY_CHUNK_SIZE, entry.getCompressedSize() - copied);
+            if (throttle != null)
+                throttle.acquire(chunk);
+            target.position(dataOffset + copied);
+            long transferred = source.transferTo(sourceOffset + copied, chunk, target);
+            if (transferred <= 0)
+                throw new EOFException("Unexpected end of container");
+            copied += transferred;
+        }
+        ContainerEntry copy = new ContainerEntry(entry.getName(), entry.getMethod(), entry.getCrc(),
+                entry.getCompressedSize(), entry.getSize(), entry.getDosTime(), start, dataOffset);
+        targetIndex.put(copy);
+        targetIndex.setDataEnd(dataOffset + entry.getCompressedSize());
+        return copy;
+    }
+
+    /**
+     * Writes the central directory of the latest entries after the data, making the container a regular zip.
+     *
+     * @throws IOException when the container has too many entries or offsets beyond 4 GB for a central directory
+     *                     without Zip64 records, the container is then left unchanged
+     */
+    public static void seal(FileChannel channel, ContainerIndex index) throws IOException {
+        long cenOffset = index.getDataEnd();
+        // the all ones values mark Zip64 records, so they are out of range as well
+        if (index.size() >= MAX_ENTRIES)
+            throw new IOException("Too many entries to seal the container : " + index.size());
+        long cenSize = 0;
+        for (ContainerEntry entry : index.getEntries()) {
+            if (entry.getLocalHeaderOffset() >= MAX_SIZE)
+                throw new IOException("Entry " + entry.getName() + " is beyond the offset limit to seal the container");
+            cenSize += CEN_HEADER + entry.getName().getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (cenOffset >= MAX_SIZE || cenSize >= MAX_SIZE)
+            throw new IOException("Container too large to seal : " + (cenOffset + cenSize));
+        long position = cenOffset;
+        for (ContainerEntry entry : index.getEntries()) {
+            byte[] nameBytes = entry.getName().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer cen = ByteBuffer.allocate(CEN_HEADER + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+            cen.putInt(CEN_SIG).putShort((short) VERSION).putShort((short) VERSION).putShort((short) FLAG_UTF8)
+                    .putShort((short) entry.getMethod()).putInt((int) entry.getDosTime()).putInt((int) entry.getCrc())
+                    .putInt((int) entry.getCompressedSize()).putInt((int) entry.getSize())
+                    .putShort((short) nameBytes.length).putShort((short) 0).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) 0).putInt(0).putInt((int) entry.getLocalHeaderOffset()).put(nameBytes);
+            cen.flip();
+            position += writeFully(channel, cen, position);
+        }
+        ByteBuffer end = ByteBuffer.allocate(END_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_SIG).putShort((short) 0).putShort((short) 0).putShort((short) index.size())
+                .putShort((short) index.size()).putInt((int) (position - cenOffset)).putInt((int) cenOffset)
+                .putShort((short) 0);
+        end.flip();
+        position += writeFully(channel, end, position);
+        channel.truncate(position);
+        index.setSealed(true);
+    }
+
+    /**
+     * Reads the central directory when the container ends with one, otherwise returns null.
+     *
+     * @param maxTailSize bytes at the end of the container searched for the end header
+     */
+    private static ContainerIndex readCentralDirectory(FileChannel channel, int maxTailSize) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < END_HEADER)
+            return null;
+        int tailSize = (int) Math.min(fileSize, maxTailSize);
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+        for (int pos = tailSize - END_HEADER; pos >= 0; pos--) {
+            if (tail.getInt(pos) != END_SIG)
+                continue;
+            long endOffset = fileSize - tailSize + pos;
+            long cenSize = Integer.toUnsignedLong(tail.getInt(pos + 12));
+            long cenOffset = Integer.toUnsignedLong(tail.getInt(pos + 16));
+            int commentLength = Short.toUnsignedInt(tail.getShort(pos + 20));
+            // guards against end signature bytes occurring inside entry data
+            if (endOffset + END_HEADER + commentLength != fileSize || cenOffset + cenSize != endOffset)
+                continue;
+            ContainerIndex index = new ContainerIndex();
+            ByteBuffer cen = read(channel, cenOffset, (int) cenSize);
+            int cenPos = 0;
+            while (cenPos + CEN_HEADER <= cenSize && cen.getInt(cenPos) == CEN_SIG) {
+                int nameLength = Short.toUnsignedInt(cen.getShort(cenPos + 28));
+                int extraLength = Short.toUnsignedInt(cen.getShort(cenPos + 30));
+                int entryCommentLength = Short.toUnsignedInt(cen.getShort(cenPos + 32));
+                index.put(new ContainerEntry(name(cen, cenPos + CEN_HEADER, nameLength),
+                        Short.toUnsignedInt(cen.getShort(cenPos + 10)),
+                        Integer.toUnsignedLong(cen.getInt(cenPos + 16)),
+                        Integer.toUnsignedLong(cen.getInt(cenPos + 20)),
+                        Integer.toUnsignedLong(cen.getInt(cenPos + 24)),
+                        Integer.toUnsignedLong(cen.getInt(cenPos + 12)),
+                        Integer.toUnsignedLong(cen.getInt(cenPos + 42)), -1));
+                cenPos += CEN_HEADER + nameLength + extraLength + entryCommentLength;
+            }
+            index.setDataEnd(cenOffset);
+            index.setSealed(true);
+            return index;
+        }
+        return null;
+    }
+
+    /**
+     * Walks the local headers of an open container up to the first incomplete entry.
+     */
+    private static ContainerIndex scanLocalHeaders(FileChannel channel) throws IOException {
+        ContainerIndex index = new ContainerIndex();
+        long fileSize = channel.size();
+        long position = 0;
+        while (position + LOC_HEADER <= fileSize) {
+            ByteBuffer loc = read(channel, position, LOC_HEADER);
+            if (loc.getInt(0) != LOC_SIG)
+                break;
+            int flag = Short.toUnsignedInt(loc.getShort(6));
+            int method = Short.toUnsignedInt(loc.getShort(8));
+            long dosTime = Integer.toUnsignedLong(loc.getInt(10));
+            long crc = Integer.toUnsignedLong(loc.getInt(14));
+            long compressedSize = Integer.toUnsignedLong(loc.getInt(18));
+            long size = Integer.toUnsignedLong(loc.getInt(22));
+            int nameLength = Short.toUnsignedInt(loc.getShort(26));
+            int extraLength = Short.toUnsignedInt(loc.getShort(28));
+            if (position + LOC_HEADER + nameLength > fileSize)
+                break;
+            String name = name(read(channel, position + LOC_HEADER, nameLength), 0, nameLength);
+            long dataOffset = position + LOC_HEADER + nameLength + extraLength;
+            if (dataOffset > fileSize)
+                break;
+            if (isTombstone(read(channel, position + LOC_HEADER + nameLength, extraLength))) {
+                index.remove(name);
+                position = dataOffset;
+                continue;
+            }
+            long next;
+            if ((flag & FLAG_DATA_DESCRIPTOR) != 0) {
+                // entries copied from a ZipOutputStream zip carry their sizes after the data
+                if (method != ZipEntry.DEFLATED)
+                    break;
+                compressedSize = deflatedLength(channel, dataOffset);
+                if (compressedSize < 0)
+                    break;
+                long descriptorOffset = dataOffset + compressedSize;
+                if (descriptorOffset + 16 > fileSize)
+                    break;
+                ByteBuffer descriptor = read(channel, descriptorOffset, 16);
+                int shift = descriptor.getInt(0) == EXT_SIG ? 4 : 0;
+                crc = Integer.toUnsignedLong(descriptor.getInt(shift));
+                size = Integer.toUnsignedLong(descriptor.getInt(shift + 8));
+                next = descriptorOffset + shift + 12;
+            } else
+                next = dataOffset + compressedSize;
+            if (next > fileSize)
+                break;
+            index.put(new ContainerEntry(name, method, crc, compressedSize, size, dosTime, position, dataOffset));
+            position = next;
+        }
+        // refuse to append over a file that is not a container, e.g. a packed one
+        if (position == 0 && fileSize >= 4 && read(channel, 0, 4).getInt(0) != 0)
+            throw new ZipException("Not a container");
+        index.setDataEnd(position);
+        return index;
+    }
+
+    /**
+     * Opens the uncompressed data of the entry. The stream reads the channel by position, so several
+     * streams may share the channel; it does not close the channel.
+     */
+    public static InputStream openEntry(FileChannel channel, ContainerEntry entry) throws IOException {
+        long dataOffset = resolveDataOffset(channel, entry);
+        InputStream raw = new ChannelInputStream(channel, dataOffset, entry.getCompressedSize());
+        if (entry.getMethod() == ZipEntry.STORED)
+            return raw;
+        if (entry.getMethod() != ZipEntry.DEFLATED)
+            throw new ZipException("Unsupported compression method " + entry.getMethod() + " for " + entry.getName());
+        return new InflaterInputStream(raw, new Inflater(true), BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Offset of the entry data. Central directory entries only know the local header offset, so the header
+     * is read once and the result kept on the entry.
+     */
+    public static long resolveDataOffset(FileChannel channel, ContainerEntry entry) throws IOException {
+        if (entry.getDataOffset() < 0) {
+            ByteBuffer loc = read(channel, entry.getLocalHeaderOffset(), LOC_HEADER);
+            if (loc.getInt(0) != LOC_SIG)
+                throw new ZipException("Invalid local header for " + entry.getName());
+            entry.setDataOffset(entry.getLocalHeaderOffset() + LOC_HEADER + Short.toUnsignedInt(loc.getShort(26))
+                    + Short.toUnsignedInt(loc.getShort(28)));
+        }
+        return entry.getDataOffset();
+    }
+
+    /**
+     * Inflates the raw deflate stream at offset to find where it ends.
+     *
+     * @return compressed length, or -1 when the stream is incomplete
+     */
+    private static long deflatedLength(FileChannel channel, long offset) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            byte[] output = new byte[BUFFER_SIZE];
+            ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = offset;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    input.clear();
+                    int read = channel.read(input, position);
+                    if (read <= 0)
+                        return -1;
+                    position += read;
+                    inflater.setInput(input.array(), 0, read);
+                }
+                if (inflater.inflate(output) == 0 && inflater.needsDictionary())
+                    return -1;
+            }
+            return inflater.getBytesRead();
+        } catch (DataFormatException e) {
+            return -1;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long deflate(FileChannel channel, Deflater deflater, byte[] output, long position) throws IOException {
+        int length = deflater.deflate(output);
+        if (length > 0)
+            position += writeFully(channel, ByteBuffer.wrap(output, 0, length), position);
+        return position;
+    }
+
+    private static ByteBuffer localHeader(int signature, int method, long dosTime, long crc, long compressedSize,
+                                          long size, byte[] nameBytes, byte[] extra) {
+        ByteBuffer loc = ByteBuffer.allocate(LOC_HEADER + nameBytes.length + extra.length).order(ByteOrder.LITTLE_ENDIAN);
+        loc.putInt(signature).putShort((short) VERSION).putShort((short) FLAG_UTF8).putShort((short) method)
+                .putInt((int) dosTime).putInt((int) crc).putInt((int) compressedSize).putInt((int) size)
+                .putShort((short) nameBytes.length).putShort((short) extra.length).put(nameBytes).put(extra);
+        loc.flip();
+        return loc;
+    }
+
+    private static void writeSignature(FileChannel channel, long position) throws IOException {
+        writeFully(channel, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, LOC_SIG), position);
+    }
+
+    private static boolean isTombstone(ByteBuffer extra) {
+        int position = 0;
+        while (position + 4 <= extra.limit()) {
+            if (extra.getShort(position) == TOMBSTONE_ID)
+                return true;
+            position += 4 + Short.toUnsignedInt(extra.getShort(position + 2));
+        }
+        return false;
+    }
+
+    static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of container");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining())
+            written += channel.write(buffer, position + written);
+        return written;
+    }
+
+    private static String name(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = buffer.get(offset + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a region of a channel by absolute position without moving the channel position.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        ChannelInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (position >= end)
+                return -1;
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (read < 0)
+                throw new EOFException("Unexpected end of container");
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+
+    static long javaToDosTime(long time) {
+        LocalDateTime ldt = LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        if (ldt.getYear() < 1980)
+            return (1 << 21) | (1 << 16);
+        return ((long) (ldt.getYear() - 1980) << 25) | (ldt.getMonthValue() << 21) | (ldt.getDayOfMonth() << 16)
+                | (ldt.getHour() << 11) | (ldt.getMinute() << 5) | (ldt.getSecond() >> 1);
+    }
+
+    public static long dosToJavaTime(long dosTime) {
+        LocalDateTime ldt = LocalDateTime.of((int) ((dosTime >> 25) & 0x7f) + 1980, (int) ((dosTime >> 21) & 0x0f),
+                (int) ((dosTime >> 16) & 0x1f), (int) ((dosTime >> 11) & 0x1f), (int) ((dosTime >> 5) & 0x3f),
+                (int) ((dosTime << 1) & 0x3e));
+        return ldt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,121 @@
+package io.mosip.commons.khazana.test.adapter;
+
+import io.mosip.commons.khazana.impl.CachingObjectStoreAdapter;
+import io.mosip.commons.khazana.spi.ObjectStoreAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CachingObjectStoreAdapterTest {
+
+    private static final String account = "acc";
+    private static final String container = "reg123";
+    private static final String source = "source";
+    private static final String process = "process";
+    private static final String objectName = "id";
+
+    @Mock
+    private ObjectStoreAdapter adapter;
+
+    private CachingObjectStoreAdapter cachingAdapter;
+
+    @Before
+    public void setup() {
+        cachingAdapter = new CachingObjectStoreAdapter(adapter, 1024 * 1024, 60000);
+    }
+
+    private void mockMetaData() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("obj1", "obj");
+        when(adapter.getMetaData(account, container, source, process, objectName)).thenReturn(metadata);
+    }
+
+    @Test
+    public void testGetMetaDataIsCached() {
+        mockMetaData();
+        cachingAdapter.getMetaData(account, container, source, process, objectName);
+        Map<String, Object> result = cachingAdapter.getMetaData(account, container, source, process, objectName);
+
+        assertEquals("obj", result.get("obj1"));
+        verify(adapter, times(1)).getMetaData(account, container, source, process, objectName);
+        assertEquals(1, cachingAdapter.getStats().getHitCount());
+        assertEquals(1, cachingAdapter.getStats().getMissCount());
+    }
+
+    @Test
+    public void testAddObjectMetaDataInvalidates() {
+        mockMetaData();
+        cachingAdapter.getMetaData(account, container, source, process, objectName);
+        cachingAdapter.addObjectMetaData(account, container, source, process, objectName, "obj2", "obj");
+        cachingAdapter.getMetaData(account, container, source, process, objectName);
+
+        verify(adapter, times(2)).getMetaData(account, container, source, process, objectName);
+    }
+
+    @Test
+    public void testExistsIsCachedUntilPut() {
+        when(adapter.exists(account, container, source, process, objectName)).thenReturn(false).thenReturn(true);
+
+        assertFalse(cachingAdapter.exists(account, container, source, process, objectName));
+        assertFalse(cachingAdapter.exists(account, container, source, process, objectName));
+        cachingAdapter.putObject(account, container, source, process, objectName, null);
+        assertTrue(cachingAdapter.exists(account, container, source, process, objectName));
+        verify(adapter, times(2)).exists(account, container, source, process, objectName);
+    }
+
+    @Test
+    public void testObjectWriteInvalidatesProcessMetaData() {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("obj1", "obj");
+        when(adapter.getMetaData(account, container, source, process, null)).thenReturn(metadata);
+
+        cachingAdapter.getMetaData(account, container, source, process, null);
+        cachingAdapter.addObjectMetaData(account, container, source, process, objectName, "obj2", "obj");
+        cachingAdapter.getMetaData(account, container, source, process, null);
+
+        verify(adapter, times(2)).getMetaData(account, container, source, process, null);
+    }
+
+    @Test
+    public void testRemoveContainerInvalidatesTags() {
+        Map<String, String> tags = new HashMap<>();
+        tags.put("tag", "value");
+        when(adapter.getTags(account, container)).thenReturn(tags);
+
+        cachingAdapter.getTags(account, container);
+        cachingAdapter.removeContainer(account, container, source, process);
+        cachingAdapter.getTags(account, container);
+
+        verify(adapter, times(2)).getTags(any(), any());
+    }
+
+    @Test
+    public void testWriteDuringSlowLoadIsNotMasked() {
+        Map<String, Object> before = new HashMap<>();
+        before.put("obj1", "old");
+        Map<String, Object> after = new HashMap<>();
+        after.put("obj1", "new");
+        // the caller's write lands while the first load is still in flight
+        when(adapter.getMetaData(account, container, source, process, objectName)).thenAnswer(invocation -> {
+            cachingAdapter.addObjectMetaData(account, container, source, process, objectName, "obj1", "new");
+            return before;
+        }).thenReturn(after);
+
+        assertEquals("old", cachingAdapter.getMetaData(account, container, source, process, objectName).get("obj1"));
+        assertEquals("new", cachingAdapter.getMetaData(account, container, source, process, objectName).get("obj1"));
+        assertEquals("new", cachingAdapter.getMetaData(account, container, source, process, objectName).get("obj1"));
+        verify(adapter, times(2)).getMetaData(account, container, source, process, objectName);
+    }
+}
@@ -0,0 +1,93 @@
+package io.mosip.commons.khazana.test.adapter;
+
+import io.mosip.commons.khazana.dto.ObjectDto;
+import io.mosip.commons.khazana.spi.ObjectStoreAdapter;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the default methods of the adapter interface, for adapters that do not override them.
+ */
+public class ObjectStoreAdapterTest {
+
+    private static final String account = "acc";
+    private static final String container = "reg123";
+    private static final String source = "source";
+    private static final String process = "process";
+    private static final String objectName = "id";
+
+    private ObjectStoreAdapter adapter;
+
+    @Before
+    public void setup() {
+        adapter = mock(ObjectStoreAdapter.class, CALLS_REAL_METHODS);
+    }
+
+    private void mockObject(String data) {
+        doReturn(new ByteArrayInputStream(data.getBytes())).when(adapter)
+                .getObject(account, container, source, process, objectName);
+    }
+
+    @Test
+    public void testGetObjectRange() throws Exception {
+        mockObject("0123456789");
+
+        assertEquals("345", new String(IOUtils.toByteArray(
+                adapter.getObjectRange(account, container, source, process, objectName, 3, 3))));
+    }
+
+    @Test
+    public void testGetObjectRangeTillEnd() throws Exception {
+        mockObject("0123456789");
+
+        assertEquals("789", new String(IOUtils.toByteArray(
+                adapter.getObjectRange(account, container, source, process, objectName, 7, -1))));
+    }
+
+    @Test
+    public void testGetObjectRangeBeyondEnd() throws Exception {
+        mockObject("0123456789");
+
+        assertEquals(0, IOUtils.toByteArray(
+                adapter.getObjectRange(account, container, source, process, objectName, 20, 5)).length);
+    }
+
+    @Test
+    public void testGetObjectRangeOfMissingObject() {
+        doReturn(null).when(adapter).getObject(account, container, source, process, objectName);
+
+        assertNull(adapter.getObjectRange(account, container, source, process, objectName, 3, 3));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetObjectSuffixIsUnsupported() {
+        adapter.getObjectSuffix(account, container, source, process, objectName, 3);
+    }
+
+    @Test
+    public void testStreamAllObjects() {
+        List<ObjectDto> objects = Arrays.asList(new ObjectDto(source, process, "id1", null),
+                new ObjectDto(source, process, "id2", null));
+        doReturn(objects).when(adapter).getAllObjects(account, container);
+
+        assertEquals(objects, adapter.streamAllObjects(account, container).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testStreamAllObjectsOfMissingContainer() {
+        doReturn(null).when(adapter).getAllObjects(account, container);
+
+        assertEquals(0, adapter.streamAllObjects(account, container).count());
+    }
+}
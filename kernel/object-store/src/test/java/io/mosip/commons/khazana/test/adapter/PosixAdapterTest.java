@@ -1,41 +1,64 @@
 package io.mosip.commons.khazana.test.adapter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.mosip.commons.khazana.dto.ObjectDto;
 import io.mosip.commons.khazana.impl.PosixAdapter;
-import io.mosip.kernel.core.util.FileUtils;
+import io.mosip.commons.khazana.util.ContainerEntryChannel;
+import io.mosip.commons.khazana.util.ContainerIndex;
+import io.mosip.commons.khazana.util.EncryptionHelper;
+import io.mosip.commons.khazana.util.IoThrottle;
+import io.mosip.commons.khazana.util.SegmentedEnvelope;
+import io.mosip.commons.khazana.util.SegmentedEnvelope.SegmentTable;
+import io.mosip.commons.khazana.util.ZipContainer;
 import org.apache.commons.io.IOUtils;
-import org.json.JSONObject;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PowerMockIgnore;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
-import org.springframework.context.annotation.PropertySource;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipFile;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-@RunWith(PowerMockRunner.class)
-@PrepareForTest({File.class, FileInputStream.class, ZipInputStream.class, ZipEntry.class,
-        PosixAdapter.class, IOUtils.class, FileUtils.class})
-@PowerMockIgnore({"com.sun.org.apache.xerces.*", "javax.xml.*", "org.xml.*", "javax.management.*"})
-@PropertySource("classpath:application-test.properties")
+@RunWith(MockitoJUnitRunner.class)
 public class PosixAdapterTest {
 
     private static final String account = "acc";
@@ -44,78 +67,286 @@ public class PosixAdapterTest {
     private static final String process = "process";
     private static final String objectName = "id";
     private static final String ZIP = ".zip";
-    private static final String JSON = ".json";
+    private static final String LOCK = ".lock";
     private static final String SEPARATOR = "/";
 
-    @InjectMocks
-    private PosixAdapter posixAdapter = new PosixAdapter();
-
-    @Mock
-    private File file;
-
-    @Mock
-    private FileInputStream fileInputStream;
-
-    @Mock
-    private ZipInputStream zipInputStream;
-
-    @Mock
-    private ZipEntry zipEntry;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
-    @Mock
-    private ZipOutputStream zipOutputStream;
+    private PosixAdapter posixAdapter = new PosixAdapter();
 
     @Mock
-    private ObjectMapper objectMapper;
+    private EncryptionHelper helper;
 
     @Mock
-    private JSONObject jsonObject;
+    private IoThrottle throttle;
 
     @Before
     public void setup() throws Exception {
-        PowerMockito.whenNew(File.class).withAnyArguments().thenReturn(file);
-        when(file.exists()).thenReturn(true);
+        Whitebox.setInternalState(posixAdapter, "baseLocation", folder.getRoot().getPath());
+        Whitebox.setInternalState(posixAdapter, "objectMapper", new ObjectMapper());
+        Whitebox.setInternalState(posixAdapter, "helper", helper);
+        Whitebox.setInternalState(posixAdapter, "indexCacheSize", 1000);
+        Whitebox.setInternalState(posixAdapter, "compression", "deflate");
+        Whitebox.setInternalState(posixAdapter, "compressionOverrides", "");
+        Whitebox.setInternalState(posixAdapter, "compactionThreshold", 0.5);
+        Whitebox.setInternalState(posixAdapter, "packSegmentSize", 64);
+        Whitebox.setInternalState(posixAdapter, "packThreads", 2);
+        Whitebox.setInternalState(posixAdapter, "unpackCacheTtl", 60L);
+        Whitebox.setInternalState(posixAdapter, "unpackCacheMaxBytes", 1048576L);
+    }
 
-        PowerMockito.whenNew(FileInputStream.class).withAnyArguments().thenReturn(fileInputStream);
+    /**
+     * Envelope of a segment with zero nonce and the plain text as cipher text.
+     */
+    private static ByteBuffer identity(ByteBuffer data, byte[] aad, ByteBuffer target) {
+        int length = 12 + aad.length + data.remaining();
+        ByteBuffer out = target != null && target.remaining() >= length ? target : ByteBuffer.allocate(length);
+        return out.put(new byte[12]).put(aad).put(data);
+    }
+
+    private static ByteBuffer identityDecrypt(ByteBuffer envelope, ByteBuffer target) {
+        envelope.position(envelope.position() + 44);
+        ByteBuffer out = target != null && target.remaining() >= envelope.remaining() ? target
+                : ByteBuffer.allocate(envelope.remaining());
+        return out.put(envelope);
+    }
 
-        PowerMockito.whenNew(ZipInputStream.class).withAnyArguments().thenReturn(zipInputStream);
+    private File unpack(File packed) throws Exception {
+        File unpacked = folder.newFile();
+        try (FileChannel envelope = FileChannel.open(packed.toPath(), StandardOpenOption.READ)) {
+            SegmentTable segments = SegmentedEnvelope.readSegmentTable(envelope);
+            try (FileChannel in = segments.open(envelope,
+                    i -> segments.decryptSegment(envelope, i, PosixAdapterTest::identityDecrypt));
+                 FileOutputStream out = new FileOutputStream(unpacked)) {
+                IOUtils.copy(Channels.newInputStream(in), out);
+            }
+        }
+        return unpacked;
+    }
 
-        when(zipInputStream.getNextEntry()).thenReturn(zipEntry).thenReturn(null);
-        when(zipEntry.getName()).thenReturn(source + SEPARATOR + process + SEPARATOR + objectName + ZIP);
+    private void mockEncryption() {
+        when(helper.encrypt(anyString(), any(), any(), any())).thenAnswer(
+                i -> identity(i.getArgument(1), i.getArgument(2), i.getArgument(3)));
+    }
 
-        PowerMockito.mockStatic(IOUtils.class);
-        PowerMockito.mockStatic(FileUtils.class);
-        byte[] data = "123".getBytes();
-        PowerMockito.when(IOUtils.class, "toByteArray", any()).thenReturn(data);
-        PowerMockito.doNothing().when(FileUtils.class, "copyToFile", any(), any());
-        PowerMockito.whenNew(ZipOutputStream.class).withAnyArguments().thenReturn(zipOutputStream);
-        doNothing().when(zipOutputStream).putNextEntry(any());
-        doNothing().when(zipOutputStream).write(any());
-        when(objectMapper.writeValueAsString(any())).thenReturn("string");
+    private void mockDecryption() {
+        when(helper.decrypt(anyString(), any(), any())).thenAnswer(
+                i -> identityDecrypt(i.getArgument(1), i.getArgument(2)));
+    }
 
+    private void putObject(String data) {
+        posixAdapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(data.getBytes()));
     }
 
     @Test
     public void testGetObject() throws Exception {
+        putObject("123");
 
         InputStream is = posixAdapter.getObject(account, container, source, process, objectName);
         assertNotNull("Get object should not be null", is);
+        assertEquals("123", new String(IOUtils.toByteArray(is)));
     }
 
     @Test
     public void testExists() throws Exception {
+        putObject("123");
 
         boolean result = posixAdapter.exists(account, container, source, process, objectName);
         assertTrue("Get object should not be present", result);
     }
 
+    @Test
+    public void testExistsAfterPut() throws Exception {
+        putObject("123");
+        assertFalse(posixAdapter.exists(account, container, source, process, "other"));
+
+        posixAdapter.putObject(account, container, source, process, "other", new ByteArrayInputStream("456".getBytes()));
+        assertTrue(posixAdapter.exists(account, container, source, process, "other"));
+    }
+
+    @Test
+    public void testCompactKeepsWritesDuringCopy() throws Exception {
+        posixAdapter.putObject(account, container, source, process, "other", new ByteArrayInputStream("456".getBytes()));
+        putObject("123");
+        putObject("789");
+        putObject("345");
+        putObject("901");
+        // writers run while the live entries are copied without the container lock
+        boolean[] written = {false};
+        doAnswer(i -> {
+            if (!written[0]) {
+                written[0] = true;
+                putObject("012");
+                posixAdapter.putObject(account, container, source, process, "new", new ByteArrayInputStream("678".getBytes()));
+                posixAdapter.deleteObject(account, container, source, process, "other");
+            }
+            return null;
+        }).when(throttle).acquire(anyLong());
+        Whitebox.setInternalState(posixAdapter, "compactionThrottle", throttle);
+
+        assertTrue(posixAdapter.compact(account, container));
+        assertEquals("012", new String(IOUtils.toByteArray(
+                posixAdapter.getObject(account, container, source, process, objectName))));
+        assertEquals("678", new String(IOUtils.toByteArray(
+                posixAdapter.getObject(account, container, source, process, "new"))));
+        assertFalse(posixAdapter.exists(account, container, source, process, "other"));
+    }
+
+    @Test
+    public void testGetObjectMatchesExactName() throws Exception {
+        posixAdapter.putObject(account, container, source, process, "x" + objectName,
+                new ByteArrayInputStream("123".getBytes()));
+
+        assertNull(posixAdapter.getObject(account, container, source, process, objectName));
+        assertFalse(posixAdapter.exists(account, container, source, process, objectName));
+    }
+
     @Test
     public void testPutObject() throws Exception {
 
-        boolean result = posixAdapter.putObject(account, container, source, process, objectName, fileInputStream);
+        boolean result = posixAdapter.putObject(account, container, source, process, objectName,
+                new ByteArrayInputStream("123".getBytes()));
         assertTrue("Put object should not be false", result);
     }
 
+    @Test
+    public void testPutObjectReplacesEntry() throws Exception {
+        putObject("123");
+        putObject("456");
+
+        InputStream is = posixAdapter.getObject(account, container, source, process, objectName);
+        assertEquals("456", new String(IOUtils.toByteArray(is)));
+    }
+
+    @Test
+    public void testConcurrentPutObject() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            String name = objectName + i;
+            results.add(executor.submit(() -> posixAdapter.putObject(account, container, source, process, name,
+                    new ByteArrayInputStream(name.getBytes()))));
+        }
+        for (Future<Boolean> result : results)
+            assertTrue(result.get());
+        executor.shutdown();
+
+        for (int i = 0; i < 32; i++)
+            assertTrue(posixAdapter.exists(account, container, source, process, objectName + i));
+    }
+
+    @Test
+    public void testConcurrentAddObjectMetaDataKeepsEveryKey() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Map<String, Object>>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            String key = "key" + i;
+            results.add(executor.submit(() -> posixAdapter.addObjectMetaData(account, container, source, process,
+                    objectName, key, key)));
+        }
+        for (Future<Map<String, Object>> result : results)
+            assertNotNull(result.get());
+        executor.shutdown();
+
+        Map<String, Object> metadata = posixAdapter.getMetaData(account, container, source, process, objectName);
+        assertEquals(32, metadata.size());
+        for (int i = 0; i < 32; i++)
+            assertEquals("key" + i, metadata.get("key" + i));
+    }
+
+    @Test
+    public void testConcurrentIncMetadataIsBatched() throws Exception {
+        Whitebox.setInternalState(posixAdapter, "counterBatchWindow", 200L);
+        putObject("123");
+        posixAdapter.addObjectMetaData(account, container, source, process, objectName, "count", "0");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return posixAdapter.incMetadata(account, container, source, process, objectName, "count");
+            }));
+        }
+        start.countDown();
+        Set<Integer> values = new HashSet<>();
+        for (Future<Integer> result : results)
+            values.add(result.get());
+        executor.shutdown();
+
+        assertEquals("8", posixAdapter.getMetaData(account, container, source, process, objectName).get("count"));
+        // callers merged into one write all get the value after that write
+        assertTrue(values.size() < 8);
+        assertTrue(values.contains(8));
+    }
+
+    @Test
+    public void testRemoveContainerDeletesLockFile() throws Exception {
+        putObject("123");
+        File lockFile = new File(folder.getRoot(), account + SEPARATOR + container + LOCK);
+        assertTrue(lockFile.exists());
+
+        assertTrue(posixAdapter.removeContainer(account, container, source, process));
+        assertFalse(lockFile.exists());
+        assertFalse(new File(folder.getRoot(), account + SEPARATOR + container + ZIP).exists());
+
+        putObject("456");
+        assertEquals("456", new String(IOUtils.toByteArray(
+                posixAdapter.getObject(account, container, source, process, objectName))));
+    }
+
+    @Test
+    public void testCompactRemovesStaleLockFile() throws Exception {
+        File lockFile = new File(folder.newFolder(account), container + LOCK);
+        assertTrue(lockFile.createNewFile());
+
+        assertFalse(posixAdapter.compact(account, container));
+        assertFalse(lockFile.exists());
+    }
+
+    @Test
+    public void testGetAllObjects() throws Exception {
+        putObject("123");
+        posixAdapter.putObject(account, container, source, process, "other", new ByteArrayInputStream("456".getBytes()));
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("obj1", "obj");
+        posixAdapter.addObjectMetaData(account, container, source, process, objectName, metadata);
+
+        List<ObjectDto> objects = posixAdapter.getAllObjects(account, container);
+        assertEquals(2, objects.size());
+        assertEquals(source, objects.get(0).getSource());
+        assertEquals(process, objects.get(0).getProcess());
+        assertEquals(objectName, objects.get(0).getObjectName());
+        assertNotNull(objects.get(0).getLastModified());
+    }
+
+    @Test
+    public void testDeleteObject() throws Exception {
+        putObject("123");
+
+        assertTrue(posixAdapter.deleteObject(account, container, source, process, objectName));
+        assertFalse(posixAdapter.exists(account, container, source, process, objectName));
+        assertNull(posixAdapter.getObject(account, container, source, process, objectName));
+        assertNull(posixAdapter.getAllObjects(account, container));
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        posixAdapter.putObject(account, container, source, process, "other", new ByteArrayInputStream("456".getBytes()));
+        putObject("123");
+        assertFalse(posixAdapter.compact(account, container));
+
+        putObject("789");
+        putObject("345");
+        putObject("012");
+        assertTrue(posixAdapter.compact(account, container));
+        assertEquals("012", new String(IOUtils.toByteArray(
+                posixAdapter.getObject(account, container, source, process, objectName))));
+        assertTrue(posixAdapter.exists(account, container, source, process, "other"));
+    }
+
     @Test
     public void testAddObjectMetaData() throws Exception {
         Map<String, Object> metadata = new HashMap<>();
@@ -129,9 +360,7 @@ public class PosixAdapterTest {
     public void testAddObjectMetaData1() throws Exception {
         Map<String, Object> metadata = new HashMap<>();
         metadata.put("obj1", new String("obj"));
-        when(zipEntry.getName()).thenReturn(objectName + JSON);
-
-        when(objectMapper.readValue(anyString(), any(Class.class))).thenReturn(jsonObject).thenReturn(metadata);
+        posixAdapter.addObjectMetaData(account, container, source, process, objectName, metadata);
 
         Map<String, Object> result = posixAdapter.addObjectMetaData(account, container, source, process, objectName, "obj", "obj1");
         assertTrue("Put object should not be false", result.size() == 1);
@@ -141,25 +370,242 @@ public class PosixAdapterTest {
     public void testGetMetaData() throws Exception {
         Map<String, Object> metadata = new HashMap<>();
         metadata.put("obj1", new String("obj"));
-        when(zipEntry.getName()).thenReturn(objectName + JSON);
-
-        when(objectMapper.readValue(anyString(), any(Class.class))).thenReturn(jsonObject).thenReturn(metadata);
+        posixAdapter.addObjectMetaData(account, container, source, process, objectName, metadata);
 
         Map<String, Object> result = posixAdapter.getMetaData(account, container, source, process, objectName);
         assertTrue("Put object should not be false", result.size() == 1);
     }
 
+    @Test
+    public void testSegmentedFileChannelDecryptsOnlyCoveringSegments() throws Exception {
+        for (int i = 0; i < 10; i++)
+            posixAdapter.putObject(account, container, source, process, objectName + i,
+                    new ByteArrayInputStream(("data" + i).getBytes()));
+        mockEncryption();
+        assertTrue(posixAdapter.pack(account, container, source, process));
+        File packed = new File(folder.getRoot(), account + SEPARATOR + container + ZIP);
+        byte[] plain = Files.readAllBytes(unpack(packed).toPath());
+
+        List<Integer> decrypted = new ArrayList<>();
+        try (FileChannel envelope = FileChannel.open(packed.toPath(), StandardOpenOption.READ)) {
+            SegmentTable segments = SegmentedEnvelope.readSegmentTable(envelope);
+            assertEquals(64, segments.getSegmentSize());
+            assertEquals((plain.length + 63) / 64, segments.getSegmentCount());
+            try (FileChannel channel = segments.open(envelope, i -> {
+                decrypted.add(i);
+                return segments.decryptSegment(envelope, i, PosixAdapterTest::identityDecrypt);
+            })) {
+                assertEquals(plain.length, channel.size());
+                decrypted.clear();
+                // a read across the boundary of the second and third segments
+                ByteBuffer buffer = ByteBuffer.allocate(40);
+                assertEquals(40, channel.read(buffer, 100));
+                assertArrayEquals(Arrays.copyOfRange(plain, 100, 140), buffer.array());
+                assertEquals(Arrays.asList(1, 2), decrypted);
+                assertEquals(-1, channel.read(ByteBuffer.allocate(1), plain.length));
+            }
+        }
+    }
+
+    @Test
+    public void testPackSealsContainer() throws Exception {
+        putObject("123");
+        mockEncryption();
+
+        assertTrue(posixAdapter.pack(account, container, source, process));
+        File packed = new File(folder.getRoot(), account + SEPARATOR + container + ZIP);
+        try (ZipFile zipFile = new ZipFile(unpack(packed))) {
+            assertNotNull(zipFile.getEntry(source + SEPARATOR + process + SEPARATOR + objectName + ZIP));
+        }
+    }
+
+    @Test
+    public void testPackEncryptsInSegments() throws Exception {
+        for (int i = 0; i < 10; i++)
+            posixAdapter.putObject(account, container, source, process, objectName + i,
+                    new ByteArrayInputStream(("data" + i).getBytes()));
+        mockEncryption();
+
+        assertTrue(posixAdapter.pack(account, container, source, process));
+        File packed = new File(folder.getRoot(), account + SEPARATOR + container + ZIP);
+        try (InputStream in = new FileInputStream(packed)) {
+            byte[] magic = new byte[4];
+            IOUtils.readFully(in, magic);
+            assertEquals("KZSE", new String(magic));
+        }
+        try (ZipFile zipFile = new ZipFile(unpack(packed))) {
+            assertEquals(10, zipFile.size());
+            ZipEntry entry = zipFile.getEntry(source + SEPARATOR + process + SEPARATOR + objectName + "9" + ZIP);
+            assertEquals("data9", new String(IOUtils.toByteArray(zipFile.getInputStream(entry))));
+        }
+    }
+
+    @Test
+    public void testGetObjectAfterPack() throws Exception {
+        putObject("123");
+        posixAdapter.putObject(account, container, source, process, "other", new ByteArrayInputStream("456".getBytes()));
+        mockEncryption();
+        mockDecryption();
+        assertTrue(posixAdapter.pack(account, container, source, process));
+
+        assertEquals("123", new String(IOUtils.toByteArray(
+                posixAdapter.getObject(account, container, source, process, objectName))));
+        assertEquals("456", new String(IOUtils.toByteArray(
+                posixAdapter.getObject(account, container, source, process, "other"))));
+        clearInvocations(helper);
+        assertEquals("123", new String(IOUtils.toByteArray(
+                posixAdapter.getObject(account, container, source, process, objectName))));
+        assertTrue(posixAdapter.exists(account, container, source, process, objectName));
+        assertEquals(2, posixAdapter.getAllObjects(account, container).size());
+        // the index and the decrypted segments are cached, so further reads do not decrypt again
+        verify(helper, never()).decrypt(anyString(), any(), any());
+    }
+
+    @Test
+    public void testGetObjectAfterPackDecryptsOnlyCoveringSegments() throws Exception {
+        Whitebox.setInternalState(posixAdapter, "compression", "stored");
+        byte[] data = new byte[640];
+        for (int i = 0; i < 10; i++) {
+            Arrays.fill(data, (byte) ('a' + i));
+            posixAdapter.putObject(account, container, source, process, objectName + i, new ByteArrayInputStream(data));
+        }
+        mockEncryption();
+        mockDecryption();
+        assertTrue(posixAdapter.pack(account, container, source, process));
+
+        // the container has more than 100 segments of 64 bytes
+        assertTrue(posixAdapter.exists(account, container, source, process, objectName + 5));
+        verify(helper, atMost(12)).decrypt(anyString(), any(), any());
+        clearInvocations(helper);
+        Arrays.fill(data, (byte) 'f');
+        assertArrayEquals(data, IOUtils.toByteArray(
+                posixAdapter.getObject(account, container, source, process, objectName + 5)));
+        verify(helper, atMost(12)).decrypt(anyString(), any(), any());
+    }
+
+    @Test
+    public void testPackAppliesCompressionPolicy() throws Exception {
+        putObject("123");
+        Whitebox.setInternalState(posixAdapter, "compressionOverrides", source + SEPARATOR + process + "=stored");
+        Whitebox.setInternalState(posixAdapter, "compressionPolicy", (Object) null);
+        mockEncryption();
+
+        assertTrue(posixAdapter.pack(account, container, source, process));
+        File packed = new File(folder.getRoot(), account + SEPARATOR + container + ZIP);
+        try (ZipFile zipFile = new ZipFile(unpack(packed))) {
+            ZipEntry entry = zipFile.getEntry(source + SEPARATOR + process + SEPARATOR + objectName + ZIP);
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertEquals("123", new String(IOUtils.toByteArray(zipFile.getInputStream(entry))));
+        }
+    }
+
+    @Test
+    public void testGetObjectChannel() throws Exception {
+        Whitebox.setInternalState(posixAdapter, "compression", "stored");
+        putObject("123");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContainerEntryChannel channel = posixAdapter.getObjectChannel(account, container, source, process, objectName)) {
+            assertTrue(channel.isZeroCopy());
+            assertEquals(3, channel.transferTo(Channels.newChannel(out)));
+        }
+        assertEquals("123", out.toString());
+    }
+
+    @Test
+    public void testGetObjectChannelMapped() throws Exception {
+        Whitebox.setInternalState(posixAdapter, "compression", "stored");
+        Whitebox.setInternalState(posixAdapter, "mmapEnabled", true);
+        putObject("789");
+        putObject("345");
+        putObject("123");
+        // compaction writes a sealed container file, the only kind that is mapped
+        assertTrue(posixAdapter.compact(account, container));
+
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        try (ContainerEntryChannel channel = posixAdapter.getObjectChannel(account, container, source, process, objectName)) {
+            assertNotNull(Whitebox.getInternalState(channel, "mapped"));
+            assertTrue(channel.isZeroCopy());
+            assertEquals(3, channel.read(buffer));
+            assertEquals(-1, channel.read(buffer));
+        }
+        assertEquals("123", new String(buffer.array(), 0, 3));
+    }
+
+    @Test
+    public void testGetObjectChannelAfterPackIsNotZeroCopy() throws Exception {
+        Whitebox.setInternalState(posixAdapter, "compression", "stored");
+        Whitebox.setInternalState(posixAdapter, "mmapEnabled", true);
+        putObject("123");
+        mockEncryption();
+        mockDecryption();
+        assertTrue(posixAdapter.pack(account, container, source, process));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContainerEntryChannel channel = posixAdapter.getObjectChannel(account, container, source, process, objectName)) {
+            assertNull(Whitebox.getInternalState(channel, "mapped"));
+            assertFalse(channel.isZeroCopy());
+            assertEquals(3, channel.transferTo(Channels.newChannel(out)));
+        }
+        assertEquals("123", out.toString());
+    }
+
+    @Test
+    public void testSealRejectsTooManyEntries() throws Exception {
+        try (FileChannel channel = FileChannel.open(folder.newFile().toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ContainerIndex index = new ContainerIndex();
+            for (int i = 0; i < 0xFFFF; i++)
+                ZipContainer.appendEntry(channel, index, "entry" + i, new ByteArrayInputStream(new byte[0]),
+                        ZipEntry.STORED, 0);
+            long size = channel.size();
+            try {
+                ZipContainer.seal(channel, index);
+                fail("Seal should fail without Zip64 records");
+            } catch (IOException e) {
+                assertEquals(size, channel.size());
+                assertFalse(index.isSealed());
+            }
+        }
+    }
+
+    @Test
+    public void testSealRejectsOffsetsBeyondFourGigabytes() throws Exception {
+        try (FileChannel channel = FileChannel.open(folder.newFile().toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // a stored entry of almost 4 GB, written as its local header followed by a hole
+            ByteBuffer header = ByteBuffer.allocate(31).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0x04034b50).putShort((short) 20).putShort((short) 0x800).putShort((short) 0).putInt(0)
+                    .putInt(0).putInt(0xFFFFFFF0).putInt(0xFFFFFFF0).putShort((short) 1).putShort((short) 0)
+                    .put((byte) 'a');
+            header.flip();
+            channel.write(header, 0);
+            channel.write(ByteBuffer.wrap(new byte[1]), 31 + 0xFFFFFFF0L - 1);
+            ContainerIndex index = ZipContainer.readIndex(channel);
+            ZipContainer.appendEntry(channel, index, "b", new ByteArrayInputStream("b".getBytes()), ZipEntry.STORED, 0);
+            long size = channel.size();
+            try {
+                ZipContainer.seal(channel, index);
+                fail("Seal should fail without Zip64 records");
+            } catch (IOException e) {
+                assertEquals(size, channel.size());
+                assertFalse(index.isSealed());
+            }
+        }
+    }
+
     @Test
     public void testException() throws Exception {
-        PowerMockito.when(FileUtils.class, "copyToFile", any(), any()).thenThrow(new io.mosip.kernel.core.exception.IOException("", "exception occured"));
+        Whitebox.setInternalState(posixAdapter, "baseLocation", folder.newFile().getPath());
 
-        boolean result = posixAdapter.putObject(account, container, source, process, objectName, fileInputStream);
+        boolean result = posixAdapter.putObject(account, container, source, process, objectName,
+                new ByteArrayInputStream("123".getBytes()));
         assertFalse("Put object should be false", result);
     }
 
     @Test
     public void testFileNotFoundInDestinationException() throws Exception {
-        when(file.exists()).thenReturn(false);
+        new File(folder.getRoot(), account).mkdir();
         InputStream result = posixAdapter.getObject(account, container, source, process, objectName);
         assertNull("Put object should be null", result);
     }
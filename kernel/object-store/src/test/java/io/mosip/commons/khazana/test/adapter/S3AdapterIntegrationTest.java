@@ -0,0 +1,723 @@
+package io.mosip.commons.khazana.test.adapter;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.AnonymousAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import io.findify.s3mock.S3Mock;
+import io.mosip.commons.khazana.dto.ObjectDto;
+import io.mosip.commons.khazana.exception.ObjectStoreAdapterException;
+import io.mosip.commons.khazana.impl.S3Adapter;
+import io.mosip.commons.khazana.impl.S3AdapterV2;
+import io.mosip.commons.khazana.util.StreamingObjectInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static io.mosip.commons.khazana.constant.KhazanaErrorCodes.OBJECT_STORE_NOT_ACCESSIBLE;
+import static io.mosip.commons.khazana.constant.KhazanaErrorCodes.TAG_OPERATION_FAILED;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs the S3 adapter against an in-memory S3Mock server. The client is a spy, so single requests can be
+ * counted or made to fail.
+ */
+public class S3AdapterIntegrationTest {
+
+    private static final String account = "acc";
+    private static final String source = "source";
+    private static final String process = "process";
+    private static final String objectName = "id";
+
+    private static final int MB = 1024 * 1024;
+
+    private static final AtomicInteger buckets = new AtomicInteger();
+
+    private static S3Mock s3Mock;
+
+    private static String endpoint;
+
+    private AmazonS3 connection;
+
+    private S3Adapter s3Adapter;
+
+    /**
+     * Bucket of the test, every test gets its own.
+     */
+    private String container;
+
+    @BeforeClass
+    public static void startS3Mock() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        s3Mock = new S3Mock.Builder().withPort(port).withInMemoryBackend().build();
+        s3Mock.start();
+        endpoint = "http://localhost:" + port;
+    }
+
+    @AfterClass
+    public static void stopS3Mock() {
+        s3Mock.stop();
+    }
+
+    @Before
+    public void setup() {
+        connection = spy(AmazonS3ClientBuilder.standard()
+                .withCredentials(new AWSStaticCredentialsProvider(new AnonymousAWSCredentials()))
+                .withPathStyleAccessEnabled(true)
+                .disableChunkedEncoding()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, "us-east-1"))
+                .build());
+        container = "bucket" + buckets.incrementAndGet();
+        s3Adapter = newAdapter(new S3Adapter());
+    }
+
+    @After
+    public void shutdown() {
+        s3Adapter.shutdownExecutors();
+    }
+
+    private <T extends S3Adapter> T newAdapter(T adapter) {
+        Whitebox.setInternalState(adapter, "connection", connection);
+        Whitebox.setInternalState(adapter, "multipartThreshold", 16777216);
+        Whitebox.setInternalState(adapter, "multipartPartSize", 8388608);
+        Whitebox.setInternalState(adapter, "downloadThreshold", 16777216L);
+        Whitebox.setInternalState(adapter, "downloadPartSize", 8388608);
+        Whitebox.setInternalState(adapter, "listPageSize", 1000);
+        Whitebox.setInternalState(adapter, "transferThreads", 4);
+        Whitebox.setInternalState(adapter, "partRetry", 3);
+        Whitebox.setInternalState(adapter, "bucketCacheSize", 100);
+        Whitebox.setInternalState(adapter, "counterMaxRetry", 10);
+        return adapter;
+    }
+
+    private String key(String name) {
+        return source + "/" + process + "/" + name;
+    }
+
+    /**
+     * Writes the object directly with the client, bypassing the adapter.
+     */
+    private void putContent(String name, byte[] data) {
+        if (!connection.doesBucketExistV2(container))
+            connection.createBucket(container);
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentLength(data.length);
+        connection.putObject(container, key(name), new ByteArrayInputStream(data), objectMetadata);
+    }
+
+    /**
+     * Keeps every S3Object the adapter gets, to check how its connection is released.
+     */
+    private List<S3Object> captureObjects() {
+        List<S3Object> objects = new ArrayList<>();
+        doAnswer(invocation -> {
+            S3Object s3Object = (S3Object) invocation.callRealMethod();
+            objects.add(s3Object);
+            return s3Object;
+        }).when(connection).getObject(any(GetObjectRequest.class));
+        return objects;
+    }
+
+    @Test
+    public void testGetObjectBuffered() throws Exception {
+        putContent(objectName, "0123456789".getBytes());
+
+        InputStream in = s3Adapter.getObject(account, container, source, process, objectName);
+        assertFalse(in instanceof StreamingObjectInputStream);
+        assertEquals("0123456789", new String(IOUtils.toByteArray(in)));
+    }
+
+    @Test
+    public void testGetObjectStreamed() throws Exception {
+        Whitebox.setInternalState(s3Adapter, "streamEnabled", true);
+        putContent(objectName, "0123456789".getBytes());
+        List<S3Object> objects = captureObjects();
+
+        try (InputStream in = s3Adapter.getObject(account, container, source, process, objectName)) {
+            assertTrue(in instanceof StreamingObjectInputStream);
+            assertEquals("0123456789", new String(IOUtils.toByteArray(in)));
+        }
+        // a fully read stream hands its connection back to the pool
+        assertFalse(objects.get(0).getObjectContent().getHttpRequest().isAborted());
+    }
+
+    @Test
+    public void testPartiallyReadStreamAbortsConnection() throws Exception {
+        Whitebox.setInternalState(s3Adapter, "streamEnabled", true);
+        putContent(objectName, "0123456789".getBytes());
+        List<S3Object> objects = captureObjects();
+
+        try (InputStream in = s3Adapter.getObject(account, container, source, process, objectName)) {
+            assertEquals('0', in.read());
+        }
+        assertTrue(objects.get(0).getObjectContent().getHttpRequest().isAborted());
+    }
+
+    @Test
+    public void testUnclosedStreamIsReleased() throws Exception {
+        Whitebox.setInternalState(s3Adapter, "streamEnabled", true);
+        putContent(objectName, "0123456789".getBytes());
+        List<S3Object> objects = captureObjects();
+
+        readWithoutClosing();
+        S3ObjectInputStream content = objects.get(0).getObjectContent();
+        // the cleaner runs once the stream was collected
+        for (int i = 0; i < 100 && !content.getHttpRequest().isAborted(); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertTrue(content.getHttpRequest().isAborted());
+    }
+
+    private void readWithoutClosing() throws IOException {
+        assertEquals('0', s3Adapter.getObject(account, container, source, process, objectName).read());
+    }
+
+    private String read(InputStream in) throws IOException {
+        try (InputStream data = in) {
+            return new String(IOUtils.toByteArray(data));
+        }
+    }
+
+    @Test
+    public void testGetObjectRange() throws Exception {
+        putContent(objectName, "0123456789".getBytes());
+
+        assertEquals("234", read(s3Adapter.getObjectRange(account, container, source, process, objectName, 2, 3)));
+        assertEquals("789", read(s3Adapter.getObjectRange(account, container, source, process, objectName, 7, -1)));
+        assertEquals("", read(s3Adapter.getObjectRange(account, container, source, process, objectName, 2, 0)));
+    }
+
+    @Test
+    public void testGetObjectRangeSendsRangeHeader() throws Exception {
+        putContent(objectName, "0123456789".getBytes());
+        List<GetObjectRequest> requests = new ArrayList<>();
+        doAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return invocation.callRealMethod();
+        }).when(connection).getObject(any(GetObjectRequest.class));
+
+        read(s3Adapter.getObjectRange(account, container, source, process, objectName, 2, 3));
+        assertArrayEquals(new long[]{2, 4}, requests.get(0).getRange());
+    }
+
+    @Test
+    public void testGetObjectSuffix() throws Exception {
+        putContent(objectName, "0123456789".getBytes());
+
+        assertEquals("789", read(s3Adapter.getObjectSuffix(account, container, source, process, objectName, 3)));
+        assertEquals("0123456789", read(s3Adapter.getObjectSuffix(account, container, source, process, objectName, 20)));
+        assertEquals("", read(s3Adapter.getObjectSuffix(account, container, source, process, objectName, 0)));
+    }
+
+    /**
+     * Reads the object directly with the client.
+     */
+    private byte[] content(String name) throws IOException {
+        try (S3Object s3Object = connection.getObject(container, key(name))) {
+            return IOUtils.toByteArray(s3Object.getObjectContent());
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Sets up multipart uploads with the smallest part size S3 accepts.
+     */
+    private void useSmallParts() {
+        Whitebox.setInternalState(s3Adapter, "multipartThreshold", 6 * MB);
+        Whitebox.setInternalState(s3Adapter, "multipartPartSize", 5 * MB);
+    }
+
+    @Test
+    public void testPutSmallObjectInOneRequest() throws Exception {
+        byte[] data = randomBytes(1000);
+
+        assertTrue(s3Adapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(data)));
+        verify(connection, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+        assertArrayEquals(data, content(objectName));
+    }
+
+    @Test
+    public void testPutLargeObjectInParts() throws Exception {
+        useSmallParts();
+        byte[] data = randomBytes(13 * MB);
+
+        assertTrue(s3Adapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(data)));
+        verify(connection).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+        verify(connection, times(3)).uploadPart(any(UploadPartRequest.class));
+        verify(connection).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertArrayEquals(data, content(objectName));
+    }
+
+    @Test
+    public void testFailedPartIsRetried() throws Exception {
+        useSmallParts();
+        byte[] data = randomBytes(13 * MB);
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.getAndIncrement() == 0)
+                throw new AmazonServiceException("part failed");
+            return invocation.callRealMethod();
+        }).when(connection).uploadPart(any(UploadPartRequest.class));
+
+        assertTrue(s3Adapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(data)));
+        verify(connection, times(4)).uploadPart(any(UploadPartRequest.class));
+        verify(connection, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        assertArrayEquals(data, content(objectName));
+    }
+
+    @Test
+    public void testUploadIsAbortedWhenPartFails() {
+        useSmallParts();
+        doThrow(new AmazonServiceException("part failed")).when(connection).uploadPart(any(UploadPartRequest.class));
+
+        try {
+            s3Adapter.putObject(account, container, source, process, objectName,
+                    new ByteArrayInputStream(randomBytes(13 * MB)));
+            fail();
+        } catch (ObjectStoreAdapterException e) {
+            assertEquals(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(), e.getErrorCode());
+        }
+        verify(connection).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(connection, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertFalse(connection.doesObjectExist(container, key(objectName)));
+    }
+
+    @Test
+    public void testPartsInFlightAreBounded() throws Exception {
+        useSmallParts();
+        Whitebox.setInternalState(s3Adapter, "multipartThreshold", 5 * MB);
+        Whitebox.setInternalState(s3Adapter, "transferThreads", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return invocation.callRealMethod();
+        }).when(connection).uploadPart(any(UploadPartRequest.class));
+        int length = 8 * 5 * MB;
+        AtomicLong read = new AtomicLong();
+        InputStream data = new InputStream() {
+            @Override
+            public int read() {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                int count = (int) Math.min(len, length - read.get());
+                if (count <= 0)
+                    return -1;
+                Arrays.fill(b, off, off + count, (byte) 1);
+                read.addAndGet(count);
+                return count;
+            }
+        };
+
+        CompletableFuture<Boolean> upload = CompletableFuture.supplyAsync(
+                () -> s3Adapter.putObject(account, container, source, process, objectName, data));
+        // wait for the reader to stall on the blocked parts
+        long last;
+        do {
+            last = read.get();
+            Thread.sleep(200);
+        } while (read.get() != last);
+        assertFalse(upload.isDone());
+        // two parts queued for the single thread and one more read ahead
+        assertTrue(read.get() <= 3L * 5 * MB);
+
+        release.countDown();
+        assertTrue(upload.get(60, TimeUnit.SECONDS));
+        assertEquals(length, read.get());
+        assertEquals(length, content(objectName).length);
+    }
+
+    /**
+     * Sets up ranged downloads of 4 byte parts for objects above 10 bytes.
+     */
+    private void useSmallDownloadParts() {
+        Whitebox.setInternalState(s3Adapter, "downloadThreshold", 10L);
+        Whitebox.setInternalState(s3Adapter, "downloadPartSize", 4);
+    }
+
+    private static Set<String> downloadFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir"))
+                .list((dir, name) -> name.startsWith("s3-download-") && name.endsWith(".tmp"));
+        return names == null ? new HashSet<>() : new HashSet<>(Arrays.asList(names));
+    }
+
+    @Test
+    public void testDownloadObjectInParts() throws Exception {
+        useSmallDownloadParts();
+        putContent(objectName, "0123456789abcdefghij".getBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(20, s3Adapter.downloadObject(account, container, source, process, objectName, out));
+        assertEquals("0123456789abcdefghij", out.toString());
+        verify(connection, times(5)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testDownloadObjectToFile() throws Exception {
+        putContent(objectName, "0123456789".getBytes());
+
+        File file = s3Adapter.downloadObjectToFile(account, container, source, process, objectName);
+        try {
+            assertEquals("0123456789", new String(Files.readAllBytes(file.toPath())));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDownloadObjectToFileInParts() throws Exception {
+        useSmallDownloadParts();
+        putContent(objectName, "0123456789abcdefghi".getBytes());
+
+        File file = s3Adapter.downloadObjectToFile(account, container, source, process, objectName);
+        try {
+            assertEquals("0123456789abcdefghi", new String(Files.readAllBytes(file.toPath())));
+        } finally {
+            file.delete();
+        }
+        verify(connection, times(5)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testFailedPartDeletesDownloadFile() {
+        useSmallDownloadParts();
+        Whitebox.setInternalState(s3Adapter, "transferThreads", 1);
+        putContent(objectName, "0123456789abcdefghijklmnopqrstuvwxyzABCD".getBytes());
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 2)
+                throw new AmazonServiceException("part failed");
+            return invocation.callRealMethod();
+        }).when(connection).getObject(any(GetObjectRequest.class));
+        Set<String> files = downloadFiles();
+
+        try {
+            s3Adapter.downloadObjectToFile(account, container, source, process, objectName);
+            fail();
+        } catch (ObjectStoreAdapterException e) {
+            assertEquals(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(), e.getErrorCode());
+        }
+        assertEquals(files, downloadFiles());
+        // the failure stops the download instead of fetching the other parts
+        assertTrue(calls.get() < 10);
+    }
+
+    @Test
+    public void testBucketIsCheckedOnce() {
+        s3Adapter.putObject(account, container, source, process, "id1", new ByteArrayInputStream("1".getBytes()));
+        s3Adapter.putObject(account, container, source, process, "id2", new ByteArrayInputStream("2".getBytes()));
+
+        verify(connection).doesBucketExistV2(container);
+        verify(connection).createBucket(container);
+    }
+
+    @Test
+    public void testBucketCacheIsBounded() {
+        Whitebox.setInternalState(s3Adapter, "bucketCacheSize", 1);
+        String other = container + "-other";
+
+        s3Adapter.putObject(account, container, source, process, "id1", new ByteArrayInputStream("1".getBytes()));
+        s3Adapter.putObject(account, other, source, process, "id1", new ByteArrayInputStream("1".getBytes()));
+        s3Adapter.putObject(account, container, source, process, "id2", new ByteArrayInputStream("2".getBytes()));
+
+        // the first bucket was evicted by the second one, but is created only once
+        verify(connection, times(2)).doesBucketExistV2(container);
+        verify(connection).createBucket(container);
+    }
+
+    /**
+     * Exposes the shared client of the adapter.
+     */
+    private static class ConnectionAdapter extends S3Adapter {
+
+        private AmazonS3 connection(String bucketName) {
+            return getConnection(bucketName);
+        }
+    }
+
+    @Test
+    public void testConnectionIsShared() throws Exception {
+        ConnectionAdapter adapter = newAdapter(new ConnectionAdapter());
+        Whitebox.setInternalState(adapter, "connection", (Object) null);
+        Whitebox.setInternalState(adapter, "url", endpoint);
+        Whitebox.setInternalState(adapter, "region", "us-east-1");
+        Whitebox.setInternalState(adapter, "accessKey", "accesskey");
+        Whitebox.setInternalState(adapter, "secretKey", "secretkey");
+        Whitebox.setInternalState(adapter, "maxConnection", 10);
+        List<CompletableFuture<AmazonS3>> connections = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            connections.add(CompletableFuture.supplyAsync(() -> adapter.connection(container)));
+
+        AmazonS3 shared = connections.get(0).get(60, TimeUnit.SECONDS);
+        for (CompletableFuture<AmazonS3> client : connections)
+            assertSame(shared, client.get(60, TimeUnit.SECONDS));
+        assertEquals(container, Whitebox.getInternalState(adapter, "healthCheckBucket"));
+        adapter.shutdownExecutors();
+    }
+
+    @Test
+    public void testHealthCheckKeepsWorkingConnection() throws Exception {
+        Whitebox.setInternalState(s3Adapter, "healthCheckBucket", container);
+        Whitebox.setInternalState(s3Adapter, "healthCheckExecutor", Executors.newSingleThreadScheduledExecutor());
+
+        Whitebox.invokeMethod(s3Adapter, "checkConnectionHealth");
+        assertSame(connection, Whitebox.getInternalState(s3Adapter, "connection"));
+    }
+
+    @Test
+    public void testHealthCheckDropsBrokenConnection() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        AmazonS3 broken = AmazonS3ClientBuilder.standard()
+                .withCredentials(new AWSStaticCredentialsProvider(new AnonymousAWSCredentials()))
+                .withPathStyleAccessEnabled(true)
+                .withClientConfiguration(new ClientConfiguration().withMaxErrorRetry(0))
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration("http://localhost:" + port, "us-east-1"))
+                .build();
+        Whitebox.setInternalState(s3Adapter, "connection", broken);
+        Whitebox.setInternalState(s3Adapter, "healthCheckBucket", container);
+        Whitebox.setInternalState(s3Adapter, "healthCheckExecutor", Executors.newSingleThreadScheduledExecutor());
+
+        Whitebox.invokeMethod(s3Adapter, "checkConnectionHealth");
+        assertNull(Whitebox.getInternalState(s3Adapter, "connection"));
+    }
+
+    /**
+     * Writes the object with user metadata directly with the client.
+     */
+    private void putContent(String name, byte[] data, Map<String, String> userMetadata) {
+        if (!connection.doesBucketExistV2(container))
+            connection.createBucket(container);
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentLength(data.length);
+        objectMetadata.setUserMetadata(userMetadata);
+        connection.putObject(container, key(name), new ByteArrayInputStream(data), objectMetadata);
+    }
+
+    @Test
+    public void testAddObjectMetaDataKeepsBody() throws Exception {
+        putContent(objectName, "0123456789".getBytes(), Collections.singletonMap("a", "1"));
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("b", "2");
+
+        assertEquals(metadata, s3Adapter.addObjectMetaData(account, container, source, process, objectName, metadata));
+        // the metadata is replaced with a server side copy
+        verify(connection, never()).getObject(any(GetObjectRequest.class));
+        Map<String, Object> stored = s3Adapter.getMetaData(account, container, source, process, objectName);
+        assertEquals("1", stored.get("a"));
+        assertEquals("2", stored.get("b"));
+        assertEquals("0123456789", new String(content(objectName)));
+    }
+
+    @Test
+    public void testAddObjectMetaDataWithETag() {
+        putContent(objectName, "0123456789".getBytes(), Collections.singletonMap("a", "1"));
+        String eTag = connection.getObjectMetadata(container, key(objectName)).getETag();
+
+        assertNotNull(s3Adapter.addObjectMetaData(account, container, source, process, objectName,
+                Collections.singletonMap("a", "2"), eTag));
+        assertEquals("2", s3Adapter.getMetaData(account, container, source, process, objectName).get("a"));
+    }
+
+    @Test
+    public void testAddObjectMetaDataWithStaleETag() {
+        putContent(objectName, "0123456789".getBytes(), Collections.singletonMap("a", "1"));
+
+        assertNull(s3Adapter.addObjectMetaData(account, container, source, process, objectName,
+                Collections.singletonMap("a", "2"), "stale"));
+        verify(connection, never()).copyObject(any(CopyObjectRequest.class));
+        assertEquals("1", s3Adapter.getMetaData(account, container, source, process, objectName).get("a"));
+    }
+
+    @Test
+    public void testIncAndDecMetadata() throws Exception {
+        putContent(objectName, "0123456789".getBytes(), Collections.singletonMap("count", "1"));
+
+        assertEquals(Integer.valueOf(2), s3Adapter.incMetadata(account, container, source, process, objectName, "count"));
+        assertEquals(Integer.valueOf(3), s3Adapter.incMetadata(account, container, source, process, objectName, "count"));
+        assertEquals(Integer.valueOf(2), s3Adapter.decMetadata(account, container, source, process, objectName, "count"));
+        assertNull(s3Adapter.incMetadata(account, container, source, process, objectName, "missing"));
+        assertEquals("0123456789", new String(content(objectName)));
+    }
+
+    @Test
+    public void testConcurrentIncMetadata() throws Exception {
+        putContent(objectName, "0123456789".getBytes(), Collections.singletonMap("count", "0"));
+        List<CompletableFuture<Integer>> updates = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            updates.add(CompletableFuture.supplyAsync(
+                    () -> s3Adapter.incMetadata(account, container, source, process, objectName, "count")));
+
+        Set<Integer> values = new HashSet<>();
+        for (CompletableFuture<Integer> update : updates)
+            values.add(update.get(60, TimeUnit.SECONDS));
+        // every update saw a different value, so none was lost
+        assertEquals(8, values.size());
+        assertEquals("8", s3Adapter.getMetaData(account, container, source, process, objectName).get("count"));
+    }
+
+    @Test
+    public void testGetAllObjectsFollowsPages() {
+        Whitebox.setInternalState(s3Adapter, "listPageSize", 2);
+        for (int i = 0; i < 5; i++)
+            putContent("id" + i, "0123456789".getBytes());
+
+        List<ObjectDto> objects = s3Adapter.getAllObjects(account, container);
+        assertEquals(Arrays.asList("id0", "id1", "id2", "id3", "id4"),
+                objects.stream().map(ObjectDto::getObjectName).collect(Collectors.toList()));
+        assertEquals(source, objects.get(0).getSource());
+        assertEquals(process, objects.get(0).getProcess());
+        verify(connection, times(3)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void testGetAllObjectsOfEmptyContainer() {
+        connection.createBucket(container);
+
+        assertNull(s3Adapter.getAllObjects(account, container));
+    }
+
+    @Test
+    public void testPartiallyConsumedListingCloses() {
+        Whitebox.setInternalState(s3Adapter, "listPageSize", 2);
+        for (int i = 0; i < 5; i++)
+            putContent("id" + i, "0123456789".getBytes());
+
+        try (Stream<ObjectDto> objects = s3Adapter.streamAllObjects(account, container)) {
+            assertEquals("id0", objects.findFirst().get().getObjectName());
+        }
+        // only the first page and the one fetched ahead were listed
+        verify(connection, atMost(2)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    /**
+     * Replaces the adapter of the test with an S3AdapterV2 that keeps tags as objects.
+     */
+    private S3AdapterV2 useTagAdapter() {
+        s3Adapter.shutdownExecutors();
+        S3AdapterV2 adapter = newAdapter(new S3AdapterV2());
+        Whitebox.setInternalState(adapter, "tagThreads", 2);
+        s3Adapter = adapter;
+        return adapter;
+    }
+
+    private static Map<String, String> tags(int count) {
+        Map<String, String> tags = new HashMap<>();
+        for (int i = 0; i < count; i++)
+            tags.put("tag" + i, "value" + i);
+        return tags;
+    }
+
+    @Test
+    public void testTagsRoundTrip() {
+        S3AdapterV2 adapter = useTagAdapter();
+        putContent(objectName, "0123456789".getBytes());
+
+        assertEquals(tags(20), adapter.addTags(account, container, tags(20)));
+        assertEquals(tags(20), adapter.getTags(account, container));
+        // tag objects are not listed as objects
+        assertEquals(1, adapter.getAllObjects(account, container).size());
+    }
+
+    @Test
+    public void testTagsAreWrittenOnTagThreads() {
+        S3AdapterV2 adapter = useTagAdapter();
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return invocation.callRealMethod();
+        }).when(connection).putObject(anyString(), anyString(), anyString());
+
+        adapter.addTags(account, container, tags(20));
+        assertFalse(threads.isEmpty());
+        for (String thread : threads)
+            assertTrue(thread, thread.startsWith("s3-tag-"));
+    }
+
+    @Test
+    public void testFailedTagIsReported() {
+        S3AdapterV2 adapter = useTagAdapter();
+        doAnswer(invocation -> {
+            if (invocation.<String>getArgument(1).endsWith("/tag3"))
+                throw new AmazonServiceException("tag failed");
+            return invocation.callRealMethod();
+        }).when(connection).putObject(anyString(), anyString(), anyString());
+
+        try {
+            adapter.addTags(account, container, tags(20));
+            fail();
+        } catch (ObjectStoreAdapterException e) {
+            assertEquals(TAG_OPERATION_FAILED.getErrorCode(), e.getErrorCode());
+            assertTrue(e.getMessage(), e.getMessage().contains("[tag3]"));
+        }
+        // the other tags are still written
+        Map<String, String> expected = tags(20);
+        expected.remove("tag3");
+        assertEquals(expected, adapter.getTags(account, container));
+    }
+}
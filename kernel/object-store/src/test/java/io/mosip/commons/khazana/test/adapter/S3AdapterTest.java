@@ -0,0 +1,111 @@
+package io.mosip.commons.khazana.test.adapter;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import io.mosip.commons.khazana.impl.S3Adapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class S3AdapterTest {
+
+    private static final String account = "acc";
+    private static final String container = "reg123";
+    private static final String source = "source";
+    private static final String process = "process";
+    private static final String objectName = "id";
+    private static final String counter = "count";
+
+    @Mock
+    private AmazonS3 connection;
+
+    private S3Adapter s3Adapter;
+
+    @Before
+    public void setup() {
+        s3Adapter = new S3Adapter();
+        Whitebox.setInternalState(s3Adapter, "connection", connection);
+        Whitebox.setInternalState(s3Adapter, "counterMaxRetry", 10);
+    }
+
+    private ObjectMetadata metadata(String value, long lastModified) {
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.addUserMetadata(counter, value);
+        objectMetadata.setLastModified(new Date(lastModified));
+        objectMetadata.setHeader("ETag", "etag");
+        return objectMetadata;
+    }
+
+    @Test
+    public void testIncMetadataRetriesOnConflictingUpdate() {
+        // another instance moves the counter from 1 to 5 between the read and the copy
+        when(connection.getObjectMetadata(anyString(), anyString()))
+                .thenReturn(metadata("1", 1000L)).thenReturn(metadata("5", 2000L));
+        when(connection.copyObject(any(CopyObjectRequest.class)))
+                .thenReturn(null).thenReturn(new CopyObjectResult());
+
+        Integer result = s3Adapter.incMetadata(account, container, source, process, objectName, counter);
+
+        assertEquals(Integer.valueOf(6), result);
+        ArgumentCaptor<CopyObjectRequest> requests = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(connection, times(2)).copyObject(requests.capture());
+        CopyObjectRequest retry = requests.getAllValues().get(1);
+        assertEquals(new Date(2000L), retry.getUnmodifiedSinceConstraint());
+        assertEquals("6", retry.getNewObjectMetadata().getUserMetaDataOf(counter));
+    }
+
+    @Test
+    public void testConcurrentIncMetadataKeepsEveryDelta() throws Exception {
+        // store that rejects copies whose precondition no longer holds
+        Object[] state = {metadata("0", 0L)};
+        when(connection.getObjectMetadata(anyString(), anyString())).thenAnswer(invocation -> {
+            synchronized (state) {
+                ObjectMetadata current = (ObjectMetadata) state[0];
+                return metadata(current.getUserMetaDataOf(counter), current.getLastModified().getTime());
+            }
+        });
+        when(connection.copyObject(any(CopyObjectRequest.class))).thenAnswer(invocation -> {
+            CopyObjectRequest request = invocation.getArgument(0);
+            synchronized (state) {
+                ObjectMetadata current = (ObjectMetadata) state[0];
+                if (current.getLastModified().after(request.getUnmodifiedSinceConstraint()))
+                    return null;
+                state[0] = metadata(request.getNewObjectMetadata().getUserMetaDataOf(counter),
+                        current.getLastModified().getTime() + 1000L);
+                return new CopyObjectResult();
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            results.add(executor.submit(() ->
+                    s3Adapter.incMetadata(account, container, source, process, objectName, counter)));
+        for (Future<Integer> result : results)
+            result.get();
+        executor.shutdown();
+
+        assertEquals("20", ((ObjectMetadata) state[0]).getUserMetaDataOf(counter));
+    }
+}
@@ -0,0 +1,573 @@
+package io.mosip.commons.khazana.test.adapter;
+
+import io.mosip.commons.khazana.dto.ObjectDto;
+import io.mosip.commons.khazana.exception.ObjectStoreAdapterException;
+import io.mosip.commons.khazana.impl.SwiftAdapter;
+import org.javaswift.joss.headers.object.ObjectManifest;
+import org.javaswift.joss.instructions.UploadInstructions;
+import org.javaswift.joss.model.Account;
+import org.javaswift.joss.model.Container;
+import org.javaswift.joss.model.StoredObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.powermock.reflect.Whitebox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static io.mosip.commons.khazana.constant.KhazanaErrorCodes.OBJECT_STORE_NOT_ACCESSIBLE;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the Swift adapter against mocked joss accounts and containers. The segment container is an in-memory
+ * fake, so segment uploads, listings and deletes can be checked by their content.
+ */
+public class SwiftAdapterTest {
+
+    private static final String account = "acc";
+    private static final String container = "reg123";
+    private static final String segmentContainerName = container + "_segments";
+    private static final String source = "source";
+    private static final String process = "process";
+    private static final String objectName = "id";
+
+    private static final long tokenLifetime = 3600;
+    private static final long tokenRefreshMargin = 300;
+
+    private SwiftAdapter swiftAdapter;
+
+    private Account swiftAccount;
+
+    private Object accountHolder;
+
+    /**
+     * Objects of the segment container by name.
+     */
+    private final NavigableMap<String, byte[]> segments = new ConcurrentSkipListMap<>();
+
+    /**
+     * Number of segment uploads still to fail.
+     */
+    private final AtomicInteger segmentFailures = new AtomicInteger();
+
+    /**
+     * Name suffix of segments that fail on every attempt.
+     */
+    private volatile String failingSegment = "none";
+
+    @Before
+    public void setup() throws Exception {
+        swiftAdapter = new SwiftAdapter();
+        Whitebox.setInternalState(swiftAdapter, "tokenLifetime", tokenLifetime);
+        Whitebox.setInternalState(swiftAdapter, "tokenRefreshMargin", tokenRefreshMargin);
+        Whitebox.setInternalState(swiftAdapter, "containerCacheSize", 100);
+        Whitebox.setInternalState(swiftAdapter, "listPageSize", 1000);
+        Whitebox.setInternalState(swiftAdapter, "metadataThreads", 4);
+        Whitebox.setInternalState(swiftAdapter, "segmentSize", 10);
+        Whitebox.setInternalState(swiftAdapter, "segmentRetry", 1);
+        Whitebox.setInternalState(swiftAdapter, "transferThreads", 2);
+        swiftAccount = mock(Account.class);
+        accountHolder = newAccountHolder(0);
+    }
+
+    @After
+    public void shutdown() {
+        swiftAdapter.shutdownExecutors();
+    }
+
+    /**
+     * Registers an authenticated account for {@link #account}, as the adapter would after the login.
+     *
+     * @param age seconds since the account authenticated
+     */
+    private Object newAccountHolder(long age) throws Exception {
+        Class<?> holderClass = Class.forName(SwiftAdapter.class.getName() + "$AccountHolder");
+        Constructor<?> constructor = holderClass.getDeclaredConstructor(SwiftAdapter.class, String.class);
+        constructor.setAccessible(true);
+        Object holder = constructor.newInstance(swiftAdapter, account);
+        Whitebox.setInternalState(holder, "account", swiftAccount);
+        Whitebox.setInternalState(holder, "authenticatedAt", System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(age));
+        Map<String, Object> accounts = Whitebox.getInternalState(swiftAdapter, "accounts");
+        accounts.put(account, holder);
+        return holder;
+    }
+
+    private Account getConnection() throws Exception {
+        return Whitebox.invokeMethod(swiftAdapter, "getConnection", account);
+    }
+
+    private long authenticatedAt() {
+        return Whitebox.<Long>getInternalState(accountHolder, "authenticatedAt");
+    }
+
+    private Container mockContainer(String name) {
+        Container mockedContainer = mock(Container.class);
+        when(mockedContainer.getName()).thenReturn(name);
+        when(mockedContainer.exists()).thenReturn(true);
+        when(swiftAccount.getContainer(name)).thenReturn(mockedContainer);
+        return mockedContainer;
+    }
+
+    private StoredObject mockObject(String name) {
+        StoredObject storedObject = mock(StoredObject.class);
+        when(storedObject.getName()).thenReturn(name);
+        when(storedObject.getLastModifiedAsDate()).thenReturn(new Date(1000L));
+        return storedObject;
+    }
+
+    /**
+     * Backs the segment container with {@link #segments}.
+     */
+    private Container fakeSegmentContainer() {
+        Container segmentContainer = mockContainer(segmentContainerName);
+        when(segmentContainer.getObject(anyString())).thenAnswer(invocation -> segment(invocation.getArgument(0)));
+        when(segmentContainer.list(anyString(), any(), anyInt())).thenAnswer(invocation -> {
+            String prefix = invocation.getArgument(0);
+            String marker = invocation.getArgument(1);
+            int pageSize = invocation.getArgument(2);
+            return (marker == null ? segments : segments.tailMap(marker, false)).keySet().stream()
+                    .filter(name -> name.startsWith(prefix))
+                    .limit(pageSize)
+                    .map(this::segment)
+                    .collect(Collectors.toList());
+        });
+        return segmentContainer;
+    }
+
+    /**
+     * Segment objects are created on the transfer threads, so they answer by method instead of being stubbed.
+     */
+    private StoredObject segment(String name) {
+        return mock(StoredObject.class, invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "getName":
+                    return name;
+                case "uploadObject":
+                    if (name.endsWith(failingSegment) || segmentFailures.getAndDecrement() > 0)
+                        throw new IllegalStateException("segment failed");
+                    segments.put(name, invocation.getArgument(0));
+                    return null;
+                case "delete":
+                    segments.remove(name);
+                    return null;
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+            }
+        });
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) i;
+        return data;
+    }
+
+    private static byte[] concat(Iterable<byte[]> parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parts.forEach(part -> out.write(part, 0, part.length));
+        return out.toByteArray();
+    }
+
+    private UploadInstructions manifestUpload(StoredObject storedObject) {
+        ArgumentCaptor<UploadInstructions> upload = ArgumentCaptor.forClass(UploadInstructions.class);
+        verify(storedObject).uploadObject(upload.capture());
+        return upload.getValue();
+    }
+
+    @Test
+    public void testFreshTokenIsReused() throws Exception {
+        assertSame(swiftAccount, getConnection());
+        verify(swiftAccount, never()).authenticate();
+    }
+
+    @Test
+    public void testTokenIsRenewedInRefreshMargin() throws Exception {
+        accountHolder = newAccountHolder(tokenLifetime - tokenRefreshMargin + 10);
+        long before = authenticatedAt();
+
+        assertSame(swiftAccount, getConnection());
+        assertSame(swiftAccount, getConnection());
+        verify(swiftAccount, times(1)).authenticate();
+        assertTrue(authenticatedAt() > before);
+    }
+
+    @Test
+    public void testFailedRenewalKeepsToken() throws Exception {
+        accountHolder = newAccountHolder(tokenLifetime - tokenRefreshMargin + 10);
+        long before = authenticatedAt();
+        doThrow(new IllegalStateException("auth failed")).when(swiftAccount).authenticate();
+
+        assertSame(swiftAccount, getConnection());
+        assertEquals(before, authenticatedAt());
+        // the next caller tries again
+        assertSame(swiftAccount, getConnection());
+        verify(swiftAccount, times(2)).authenticate();
+    }
+
+    @Test
+    public void testExpiredTokenIsRenewed() throws Exception {
+        accountHolder = newAccountHolder(tokenLifetime + 10);
+
+        assertSame(swiftAccount, getConnection());
+        verify(swiftAccount).authenticate();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailedRenewalOfExpiredToken() throws Exception {
+        accountHolder = newAccountHolder(tokenLifetime + 10);
+        doThrow(new IllegalStateException("auth failed")).when(swiftAccount).authenticate();
+
+        getConnection();
+    }
+
+    @Test
+    public void testOneCallerRenewsToken() throws Exception {
+        accountHolder = newAccountHolder(tokenLifetime - tokenRefreshMargin + 10);
+        CountDownLatch renewing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            renewing.countDown();
+            release.await();
+            return swiftAccount;
+        }).when(swiftAccount).authenticate();
+
+        CompletableFuture<Void> renewal = CompletableFuture.runAsync(() -> {
+            try {
+                getConnection();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(renewing.await(10, TimeUnit.SECONDS));
+        // other callers keep the current token while it is renewed
+        for (int i = 0; i < 5; i++)
+            assertSame(swiftAccount, getConnection());
+        release.countDown();
+        renewal.get(10, TimeUnit.SECONDS);
+        verify(swiftAccount, times(1)).authenticate();
+    }
+
+    @Test
+    public void testContainerIsCheckedOnce() {
+        Container mockedContainer = mockContainer(container);
+        StoredObject storedObject = mockObject(objectName);
+        when(mockedContainer.getObject(objectName)).thenReturn(storedObject);
+        when(storedObject.exists()).thenReturn(true);
+
+        assertTrue(swiftAdapter.exists(account, container, source, process, objectName));
+        assertTrue(swiftAdapter.exists(account, container, source, process, objectName));
+        verify(mockedContainer, times(1)).exists();
+    }
+
+    @Test
+    public void testMissingContainerIsNotCached() {
+        Container mockedContainer = mockContainer(container);
+        when(mockedContainer.exists()).thenReturn(false);
+
+        assertFalse(swiftAdapter.exists(account, container, source, process, objectName));
+        assertFalse(swiftAdapter.exists(account, container, source, process, objectName));
+        verify(mockedContainer, times(2)).exists();
+        verify(mockedContainer, never()).create();
+    }
+
+    @Test
+    public void testMissingContainerIsCreatedOnPut() {
+        Container mockedContainer = mockContainer(container);
+        when(mockedContainer.exists()).thenReturn(false);
+        when(mockedContainer.create()).thenReturn(mockedContainer);
+        StoredObject storedObject = mockObject(objectName);
+        when(mockedContainer.getObject(objectName)).thenReturn(storedObject);
+
+        assertTrue(swiftAdapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(bytes(5))));
+        assertTrue(swiftAdapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(bytes(5))));
+        verify(mockedContainer, times(1)).create();
+    }
+
+    @Test
+    public void testContainerCacheIsBounded() {
+        Whitebox.setInternalState(swiftAdapter, "containerCacheSize", 1);
+        Container mockedContainer = mockContainer(container);
+        Container other = mockContainer(container + "-other");
+        when(mockedContainer.getObject(objectName)).thenReturn(mockObject(objectName));
+        when(other.getObject(objectName)).thenReturn(mockObject(objectName));
+
+        swiftAdapter.exists(account, container, source, process, objectName);
+        swiftAdapter.exists(account, container + "-other", source, process, objectName);
+        swiftAdapter.exists(account, container, source, process, objectName);
+        verify(mockedContainer, times(2)).exists();
+    }
+
+    @Test
+    public void testGetAllObjectsFollowsMarkers() {
+        Whitebox.setInternalState(swiftAdapter, "listPageSize", 2);
+        Container mockedContainer = mockContainer(container);
+        List<StoredObject> objects = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            objects.add(mockObject(source + "/" + process + "/id" + i));
+        when(mockedContainer.list(null, null, 2)).thenReturn(objects.subList(0, 2));
+        when(mockedContainer.list(null, source + "/" + process + "/id1", 2)).thenReturn(objects.subList(2, 4));
+        when(mockedContainer.list(null, source + "/" + process + "/id3", 2)).thenReturn(objects.subList(4, 5));
+
+        List<ObjectDto> objectDtos = swiftAdapter.getAllObjects(account, container);
+        assertEquals(Arrays.asList("id0", "id1", "id2", "id3", "id4"),
+                objectDtos.stream().map(ObjectDto::getObjectName).collect(Collectors.toList()));
+        assertEquals(source, objectDtos.get(0).getSource());
+        assertEquals(process, objectDtos.get(0).getProcess());
+        verify(mockedContainer, times(3)).list(any(), any(), anyInt());
+    }
+
+    @Test
+    public void testGetAllObjectsEndsOnEmptyPage() {
+        Whitebox.setInternalState(swiftAdapter, "listPageSize", 2);
+        Container mockedContainer = mockContainer(container);
+        List<StoredObject> objects = Arrays.asList(mockObject("id0"), mockObject("id1"));
+        when(mockedContainer.list(null, null, 2)).thenReturn(objects);
+        when(mockedContainer.list(null, "id1", 2)).thenReturn(Collections.emptyList());
+
+        assertEquals(2, swiftAdapter.getAllObjects(account, container).size());
+        verify(mockedContainer, times(2)).list(any(), any(), anyInt());
+    }
+
+    @Test
+    public void testGetAllObjectsOfMissingContainer() {
+        Container mockedContainer = mockContainer(container);
+        when(mockedContainer.exists()).thenReturn(false);
+
+        assertNull(swiftAdapter.getAllObjects(account, container));
+    }
+
+    @Test
+    public void testGetAllMetaDataInParallel() {
+        Whitebox.setInternalState(swiftAdapter, "listPageSize", 4);
+        Container mockedContainer = mockContainer(container);
+        CountDownLatch fetching = new CountDownLatch(4);
+        AtomicBoolean parallel = new AtomicBoolean(true);
+        List<StoredObject> objects = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            StoredObject storedObject = mockObject("id" + i);
+            Map<String, Object> metadata = Collections.singletonMap("name", "id" + i);
+            when(storedObject.getMetadata()).thenAnswer(invocation -> {
+                fetching.countDown();
+                // every fetch of the page waits for the others, which only works when they run together
+                if (!fetching.await(10, TimeUnit.SECONDS))
+                    parallel.set(false);
+                return metadata;
+            });
+            objects.add(storedObject);
+        }
+        when(mockedContainer.list(null, null, 4)).thenReturn(objects);
+        when(mockedContainer.list(null, "id3", 4)).thenReturn(Collections.emptyList());
+
+        Map<String, Object> metaData = swiftAdapter.getMetaData(account, container, source, process, null);
+        assertTrue(parallel.get());
+        assertEquals(4, metaData.size());
+        assertEquals(Collections.singletonMap("name", "id2"), metaData.get("id2"));
+    }
+
+    @Test
+    public void testFailedMetaDataIsSkipped() {
+        Container mockedContainer = mockContainer(container);
+        StoredObject failing = mockObject("id0");
+        when(failing.getMetadata()).thenThrow(new IllegalStateException("metadata failed"));
+        StoredObject storedObject = mockObject("id1");
+        when(storedObject.getMetadata()).thenReturn(Collections.singletonMap("name", "id1"));
+        when(mockedContainer.list(null, null, 1000)).thenReturn(Arrays.asList(failing, storedObject));
+
+        Map<String, Object> metaData = swiftAdapter.getMetaData(account, container, source, process, null);
+        assertEquals(Collections.singleton("id1"), metaData.keySet());
+    }
+
+    @Test
+    public void testSmallObjectIsUploadedInOneRequest() {
+        Container mockedContainer = mockContainer(container);
+        StoredObject storedObject = mockObject(objectName);
+        when(mockedContainer.getObject(objectName)).thenReturn(storedObject);
+
+        swiftAdapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(bytes(9)));
+        ArgumentCaptor<byte[]> upload = ArgumentCaptor.forClass(byte[].class);
+        verify(storedObject).uploadObject(upload.capture());
+        assertArrayEquals(bytes(9), upload.getValue());
+        verify(swiftAccount, never()).getContainer(segmentContainerName);
+    }
+
+    @Test
+    public void testUnsegmentedUploadStreams() {
+        Whitebox.setInternalState(swiftAdapter, "segmentSize", 0);
+        Container mockedContainer = mockContainer(container);
+        StoredObject storedObject = mockObject(objectName);
+        when(mockedContainer.getObject(objectName)).thenReturn(storedObject);
+        InputStream data = new ByteArrayInputStream(bytes(100));
+
+        swiftAdapter.putObject(account, container, source, process, objectName, data);
+        verify(storedObject).uploadObject(data);
+    }
+
+    @Test
+    public void testObjectOfSegmentSizeIsSegmented() {
+        Container mockedContainer = mockContainer(container);
+        StoredObject storedObject = mockObject(objectName);
+        when(mockedContainer.getObject(objectName)).thenReturn(storedObject);
+        fakeSegmentContainer();
+
+        swiftAdapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(bytes(10)));
+        assertEquals(1, segments.size());
+        String segmentName = segments.firstKey();
+        assertTrue(segmentName, segmentName.matches(objectName + "/[^/]+/00000001"));
+        assertArrayEquals(bytes(10), segments.get(segmentName));
+        assertEquals(segmentContainerName + "/" + segmentName.substring(0, segmentName.lastIndexOf('/') + 1),
+                manifestUpload(storedObject).getObjectManifest().getHeaderValue());
+    }
+
+    @Test
+    public void testLargeObjectIsSegmented() {
+        Container mockedContainer = mockContainer(container);
+        StoredObject storedObject = mockObject(objectName);
+        when(mockedContainer.getObject(objectName)).thenReturn(storedObject);
+        fakeSegmentContainer();
+
+        swiftAdapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(bytes(25)));
+        assertEquals(3, segments.size());
+        String prefix = segments.firstKey().substring(0, segments.firstKey().lastIndexOf('/') + 1);
+        assertEquals(Arrays.asList(prefix + "00000001", prefix + "00000002", prefix + "00000003"),
+                new ArrayList<>(segments.keySet()));
+        assertEquals(5, segments.lastEntry().getValue().length);
+        // the manifest concatenates the segments in name order
+        assertArrayEquals(bytes(25), concat(segments.values()));
+        assertEquals(segmentContainerName + "/" + prefix,
+                manifestUpload(storedObject).getObjectManifest().getHeaderValue());
+    }
+
+    @Test
+    public void testFailedSegmentIsRetried() {
+        Container mockedContainer = mockContainer(container);
+        StoredObject storedObject = mockObject(objectName);
+        when(mockedContainer.getObject(objectName)).thenReturn(storedObject);
+        fakeSegmentContainer();
+        segmentFailures.set(1);
+
+        swiftAdapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(bytes(25)));
+        assertArrayEquals(bytes(25), concat(segments.values()));
+        manifestUpload(storedObject);
+    }
+
+    @Test
+    public void testFailedUploadDeletesSegments() {
+        Container mockedContainer = mockContainer(container);
+        StoredObject storedObject = mockObject(objectName);
+        when(mockedContainer.getObject(objectName)).thenReturn(storedObject);
+        fakeSegmentContainer();
+        // the last segment fails on every attempt, after the single transfer thread uploaded the others
+        failingSegment = "00000003";
+        Whitebox.setInternalState(swiftAdapter, "transferThreads", 1);
+
+        try {
+            swiftAdapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(bytes(25)));
+            fail();
+        } catch (ObjectStoreAdapterException e) {
+            assertEquals(OBJECT_STORE_NOT_ACCESSIBLE.getErrorCode(), e.getErrorCode());
+        }
+        assertTrue(segments.isEmpty());
+        verify(storedObject, never()).uploadObject(any(UploadInstructions.class));
+    }
+
+    @Test
+    public void testReplacedSegmentsAreDeleted() {
+        Container mockedContainer = mockContainer(container);
+        StoredObject storedObject = mockObject(objectName);
+        when(mockedContainer.getObject(objectName)).thenReturn(storedObject);
+        fakeSegmentContainer();
+        segments.put(objectName + "/old/00000001", bytes(10));
+        segments.put(objectName + "/old/00000002", bytes(5));
+        segments.put(objectName + "/other/00000001", bytes(10));
+        segments.put(objectName + "2/old/00000001", bytes(10));
+        when(storedObject.exists()).thenReturn(true);
+        when(storedObject.getObjectManifest()).thenReturn(new ObjectManifest(segmentContainerName + "/" + objectName + "/old/"));
+
+        swiftAdapter.putObject(account, container, source, process, objectName, new ByteArrayInputStream(bytes(25)));
+        assertFalse(segments.keySet().stream().anyMatch(name -> name.startsWith(objectName + "/old/")));
+        // segments of other uploads and of other objects are kept
+        assertTrue(segments.containsKey(objectName + "/other/00000001"));
+        assertTrue(segments.containsKey(objectName + "2/old/00000001"));
+        assertEquals(3 + 2, segments.size());
+    }
+
+    private String segmentPrefix(StoredObject storedObject) throws Exception {
+        Container segmentContainer = mockContainer(segmentContainerName);
+        return Whitebox.invokeMethod(swiftAdapter, "getSegmentPrefix", storedObject, segmentContainer, objectName + "/");
+    }
+
+    private StoredObject manifestObject(String manifest) {
+        StoredObject storedObject = mockObject(objectName);
+        when(storedObject.exists()).thenReturn(true);
+        when(storedObject.getObjectManifest()).thenReturn(manifest == null ? null : new ObjectManifest(manifest));
+        return storedObject;
+    }
+
+    @Test
+    public void testSegmentPrefixOfUpload() throws Exception {
+        assertEquals(objectName + "/upload/",
+                segmentPrefix(manifestObject(segmentContainerName + "/" + objectName + "/upload/")));
+    }
+
+    @Test
+    public void testSegmentPrefixOfMissingObject() throws Exception {
+        assertNull(segmentPrefix(mockObject(objectName)));
+    }
+
+    @Test
+    public void testSegmentPrefixOfPlainObject() throws Exception {
+        assertNull(segmentPrefix(manifestObject(null)));
+    }
+
+    @Test
+    public void testSegmentPrefixInOtherContainer() throws Exception {
+        assertNull(segmentPrefix(manifestObject("other_segments/" + objectName + "/upload/")));
+    }
+
+    @Test
+    public void testSegmentPrefixSharedWithOtherObjects() throws Exception {
+        assertNull(segmentPrefix(manifestObject(segmentContainerName + "/" + objectName + "/")));
+        assertNull(segmentPrefix(manifestObject(segmentContainerName + "/" + objectName)));
+        assertNull(segmentPrefix(manifestObject(segmentContainerName + "/" + objectName + "2/upload/")));
+        assertNull(segmentPrefix(manifestObject(segmentContainerName + "/" + objectName + "/upload")));
+        assertNull(segmentPrefix(manifestObject(segmentContainerName + "/" + objectName + "/upload/nested/")));
+    }
+
+    @Test
+    public void testSegmentPrefixOfUnreadableManifest() throws Exception {
+        StoredObject storedObject = mockObject(objectName);
+        when(storedObject.exists()).thenThrow(new IllegalStateException("head failed"));
+
+        assertNull(segmentPrefix(storedObject));
+    }
+}